@@ -0,0 +1,66 @@
+package ru.misterparser.futbol24;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Year;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Правила свежести кеша страниц в зависимости от вида ссылки.
+ * <p>
+ * Страница сыгранного матча больше не меняется и хранится бессрочно, несыгранный матч в кеш не попадает.
+ * Страницы результатов сезона (results/, statLR-Page) хранятся resultsCacheTtlMinutes минут, а завершённого
+ * сезона (год окончания в ссылке меньше текущего) - бессрочно, они тоже больше не меняются.
+ * Остальные страницы - pageCacheTtlMinutes минут. Отрицательное значение в parser.properties означает "бессрочно".
+ */
+final class CachePolicy {
+
+    private static final long RESULTS_MAX_AGE = getMaxAge("resultsCacheTtlMinutes", 6 * 60);
+    private static final long PAGE_MAX_AGE = getMaxAge("pageCacheTtlMinutes", 24 * 60);
+    // .../2015-2016/results/ или .../2016/results/
+    private static final Pattern SEASON_PATTERN = Pattern.compile("/([0-9]{4})(?:-([0-9]{4}))?/results/");
+
+    private CachePolicy() {
+    }
+
+    /**
+     * Сколько миллисекунд страница из кеша считается свежей.
+     */
+    static long getMaxAge(String url) {
+        if (isMatchPage(url)) {
+            return Long.MAX_VALUE;
+        }
+        if (isResultsPage(url)) {
+            return isCompletedSeason(url) ? Long.MAX_VALUE : RESULTS_MAX_AGE;
+        }
+        return PAGE_MAX_AGE;
+    }
+
+    static boolean isStorable(String url, String page) {
+        return !isMatchPage(url) || MatchPageExtractor.hasFinalScore(page);
+    }
+
+    static boolean isMatchPage(String url) {
+        return StringUtils.containsIgnoreCase(url, "/match/");
+    }
+
+    static boolean isResultsPage(String url) {
+        return StringUtils.containsIgnoreCase(url, "/results/") || StringUtils.containsIgnoreCase(url, "statLR-Page");
+    }
+
+    static boolean isCompletedSeason(String url) {
+        Matcher matcher = SEASON_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            return false;
+        }
+        int lastYear = Integer.parseInt(matcher.group(2) != null ? matcher.group(2) : matcher.group(1));
+        return lastYear < Year.now().getValue();
+    }
+
+    private static long getMaxAge(String name, int defaultMinutes) {
+        int minutes = ParserProperties.get().getInt(name, defaultMinutes);
+        return minutes < 0 ? Long.MAX_VALUE : TimeUnit.MINUTES.toMillis(minutes);
+    }
+}
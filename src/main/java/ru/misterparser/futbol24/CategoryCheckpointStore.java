@@ -0,0 +1,112 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Контрольные точки разделов: какие матчи раздела уже обработаны при последнем полном обходе.
+ * <p>
+ * Точка сохраняется только после обхода раздела без ошибок и остановок: следующий обход
+ * останавливает пагинацию на первой странице с известным матчем и должен быть уверен,
+ * что всё более старое уже обработано.
+ */
+@Slf4j
+class CategoryCheckpointStore {
+
+    private static volatile CategoryCheckpointStore categoryCheckpointStore;
+
+    private final SegmentStore store;
+
+    @Value
+    static class Checkpoint {
+        Set<String> matchUrls;
+        long updated;
+    }
+
+    private CategoryCheckpointStore() throws IOException {
+        store = new SegmentStore(new File(ConfigurationUtils.getCurrentDirectory() + "checkpoints/"));
+    }
+
+    /**
+     * null, если хранилище не удалось открыть: тогда разделы обходятся целиком.
+     */
+    static CategoryCheckpointStore get() {
+        if (categoryCheckpointStore == null) {
+            synchronized (CategoryCheckpointStore.class) {
+                if (categoryCheckpointStore == null) {
+                    try {
+                        categoryCheckpointStore = new CategoryCheckpointStore();
+                    } catch (Exception e) {
+                        log.debug("Не удалось открыть хранилище контрольных точек", e);
+                        return null;
+                    }
+                }
+            }
+        }
+        return categoryCheckpointStore;
+    }
+
+    Checkpoint get(String categoryUrl) {
+        try {
+            byte[] value = store.get(categoryUrl);
+            return value != null ? read(value) : null;
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    void put(String categoryUrl, Checkpoint checkpoint) {
+        try {
+            store.put(categoryUrl, write(checkpoint));
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    void remove(String categoryUrl) {
+        try {
+            store.remove(categoryUrl);
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    private static byte[] write(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // ссылки матчей раздела отличаются только хвостом и хорошо сжимаются
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeLong(checkpoint.getUpdated());
+            out.writeInt(checkpoint.getMatchUrls().size());
+            for (String url : checkpoint.getMatchUrls()) {
+                out.writeUTF(url);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Checkpoint read(byte[] value) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(value)))) {
+            long updated = in.readLong();
+            int size = in.readInt();
+            Set<String> matchUrls = new LinkedHashSet<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                matchUrls.add(in.readUTF());
+            }
+            return new Checkpoint(Collections.unmodifiableSet(matchUrls), updated);
+        }
+    }
+}
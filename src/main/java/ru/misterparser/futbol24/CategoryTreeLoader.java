@@ -0,0 +1,313 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import ru.misterparser.common.JSoupUtils;
+import ru.misterparser.common.Utils;
+import ru.misterparser.common.gui.tree.TreeUtils;
+import ru.misterparser.common.model.Category;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ленивая загрузка дерева разделов.
+ * <p>
+ * Сразу загружается только список стран с главной страницы. У страны и лиги до загрузки один ребёнок-заглушка
+ * с адресом, по которому загружаются её дети; загрузка идёт при раскрытии или выборе узла.
+ * После загрузки узла в фоне подгружаются его дети - их обычно раскрывают следующими.
+ * Узлы дерева меняются только в потоке Swing.
+ */
+@Slf4j
+class CategoryTreeLoader {
+
+    private static final CategoryTreeLoader CATEGORY_TREE_LOADER = new CategoryTreeLoader();
+
+    private static final String SITE = "https://www.futbol24.com/";
+
+    enum Level {
+        COUNTRY, LEAGUE
+    }
+
+    /**
+     * Заглушка на месте незагруженных детей узла. Сохраняется в конфигурации вместе с деревом.
+     */
+    @Value
+    static class Stub implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        Level level;
+        String url;
+
+        @Override
+        public String toString() {
+            return "Загрузка...";
+        }
+    }
+
+    private final Map<DefaultMutableTreeNode, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8, r -> newThread(r, "CategoryTreeLoader"));
+    private final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(2, r -> newThread(r, "CategoryTreePrefetch"));
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(8, r -> newThread(r, "CategoryTreeRefresh"));
+
+    private CategoryTreeLoader() {
+    }
+
+    static CategoryTreeLoader get() {
+        return CATEGORY_TREE_LOADER;
+    }
+
+    private static Thread newThread(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Корень дерева: международные и национальные турниры со странами, одна загрузка главной страницы.
+     */
+    DefaultTreeModel loadRoot() throws InterruptedException {
+        DefaultMutableTreeNode rootTreeNode = new DefaultMutableTreeNode();
+        Document document = new LeagueLoader().getRootNode(SITE, false);
+        rootTreeNode.add(createGroup("Интернациональные", document.select("div.international ul.countries > li > a")));
+        rootTreeNode.add(createGroup("Национальные", document.select("div.national ul.countries > li > a")));
+        return new DefaultTreeModel(rootTreeNode);
+    }
+
+    private static DefaultMutableTreeNode createGroup(String name, List<Element> as) {
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(new Category(name, null));
+        for (Element a : as) {
+            String dataId = a.parent().attr("data-id");
+            node.add(createNode(a, new Stub(Level.COUNTRY, SITE + "ml/subLeagues/?CountryId=" + dataId)));
+        }
+        return node;
+    }
+
+    private static DefaultMutableTreeNode createNode(Element a, Stub stub) {
+        String name = JSoupUtils.getText(a);
+        String url = Utils.normalizeUrl(a.attr("href"), SITE);
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(new Category(name, url));
+        node.add(new DefaultMutableTreeNode(stub != null ? stub : new Stub(Level.LEAGUE, url)));
+        return node;
+    }
+
+    /**
+     * Заглушка узла или null, если дети узла уже загружены.
+     */
+    static Stub getStub(DefaultMutableTreeNode node) {
+        if (node.getChildCount() == 1) {
+            Object userObject = ((DefaultMutableTreeNode) node.getFirstChild()).getUserObject();
+            if (userObject instanceof Stub) {
+                return (Stub) userObject;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Загрузка детей узла. Будущее завершается в потоке Swing, когда дети уже вставлены в дерево.
+     */
+    CompletableFuture<Void> load(DefaultTreeModel model, DefaultMutableTreeNode node) {
+        Stub stub = getStub(node);
+        if (stub == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> existing = loading.putIfAbsent(node, future);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(() -> load(model, node, stub, future));
+        return future;
+    }
+
+    /**
+     * Загрузка узла и фоновая подгрузка его детей, для раскрытия и выбора узла пользователем.
+     */
+    CompletableFuture<Void> open(DefaultTreeModel model, DefaultMutableTreeNode node) {
+        return load(model, node).thenRun(() -> prefetch(model, node));
+    }
+
+    /**
+     * Загрузка всех незагруженных узлов поддерева, для обхода выбранных разделов.
+     * Узлы, которые не удалось загрузить, остаются с заглушкой и в обход не попадают.
+     */
+    CompletableFuture<Void> loadSubtree(DefaultTreeModel model, DefaultMutableTreeNode node) {
+        return load(model, node).exceptionally(t -> null).thenCompose(v -> {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (TreeNode child : Collections.list(node.children())) {
+                futures.add(loadSubtree(model, (DefaultMutableTreeNode) child));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    /**
+     * Фоновое обновление списков сезонов у загруженных лиг. Списки сравниваются с деревом, новые сезоны
+     * вставляются на свои места, выбранные узлы остаются выбранными. Незагруженные узлы не трогаются,
+     * их дети загрузятся при раскрытии. Новые страны и лиги так не находятся, для них дерево перестраивается
+     * целиком кнопкой обновления. Запросы идут через прокси и лимитер обхода.
+     * Вызывается в потоке Swing, результат - число добавленных сезонов.
+     */
+    CompletableFuture<Integer> refresh(DefaultTreeModel model) {
+        List<DefaultMutableTreeNode> leagues = new ArrayList<>();
+        Enumeration<TreeNode> enumeration = ((DefaultMutableTreeNode) model.getRoot()).depthFirstEnumeration();
+        while (enumeration.hasMoreElements()) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) enumeration.nextElement();
+            // корень - группа - страна - лига - сезон
+            if (node.getLevel() == 3 && node.getUserObject() instanceof Category && getStub(node) == null) {
+                leagues.add(node);
+            }
+        }
+        log.debug("Обновление сезонов лиг: " + leagues.size());
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(leagues.size());
+        for (DefaultMutableTreeNode league : leagues) {
+            String url = ((Category) league.getUserObject()).getUrl();
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return parseSeasons(new LeagueLoader().refreshRootNode(url, false));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+            }, refreshExecutor).thenApplyAsync(seasons -> merge(model, league, seasons), SwingUtilities::invokeLater).exceptionally(t -> {
+                log.debug("Не удалось обновить сезоны " + url, t);
+                return 0;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Вставка сезонов, которых нет в дереве, после ближайшего предшествующего известного сезона.
+     * Сезоны, пропавшие с сайта, остаются.
+     */
+    private static int merge(DefaultTreeModel model, DefaultMutableTreeNode league, List<DefaultMutableTreeNode> seasons) {
+        Map<String, DefaultMutableTreeNode> existing = new HashMap<>();
+        for (TreeNode child : Collections.list(league.children())) {
+            Object userObject = ((DefaultMutableTreeNode) child).getUserObject();
+            if (userObject instanceof Category) {
+                existing.put(((Category) userObject).getUrl(), (DefaultMutableTreeNode) child);
+            }
+        }
+        List<DefaultMutableTreeNode> inserted = new ArrayList<>();
+        int position = 0;
+        for (DefaultMutableTreeNode season : seasons) {
+            DefaultMutableTreeNode node = existing.get(((Category) season.getUserObject()).getUrl());
+            if (node != null) {
+                position = league.getIndex(node) + 1;
+            } else {
+                league.insert(season, position++);
+                inserted.add(season);
+            }
+        }
+        if (!inserted.isEmpty()) {
+            model.nodesWereInserted(league, inserted.stream().mapToInt(league::getIndex).sorted().toArray());
+            log.debug("Новые сезоны: " + TreeUtils.getCategories(league, true) + " " + inserted);
+        }
+        return inserted.size();
+    }
+
+    /**
+     * Подгрузка детей узла на отдельном небольшом пуле, чтобы не занимать потоки загрузки по запросу пользователя.
+     * Если пользователь раскрыл узел раньше, чем до него дошла очередь, узел загружается по запросу, а подгрузка пропускается.
+     */
+    private void prefetch(DefaultTreeModel model, DefaultMutableTreeNode node) {
+        for (TreeNode child : Collections.list(node.children())) {
+            DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) child;
+            Stub stub = getStub(childNode);
+            if (stub != null && !loading.containsKey(childNode)) {
+                prefetchExecutor.execute(() -> {
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    if (loading.putIfAbsent(childNode, future) == null) {
+                        load(model, childNode, stub, future);
+                    }
+                });
+            }
+        }
+    }
+
+    private void load(DefaultTreeModel model, DefaultMutableTreeNode node, Stub stub, CompletableFuture<Void> future) {
+        try {
+            List<DefaultMutableTreeNode> children = loadChildren(stub);
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    insert(model, node, children);
+                } finally {
+                    loading.remove(node);
+                    future.complete(null);
+                }
+            });
+        } catch (Throwable t) {
+            log.debug("Не удалось загрузить " + stub.getUrl(), t);
+            // заглушка остаётся, следующее раскрытие узла повторит загрузку
+            loading.remove(node);
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static List<DefaultMutableTreeNode> loadChildren(Stub stub) throws InterruptedException {
+        List<DefaultMutableTreeNode> children = new ArrayList<>();
+        switch (stub.getLevel()) {
+            case COUNTRY: {
+                Document document = new LeagueLoader().getRootNode(stub.getUrl(), true);
+                for (Element a : document.select("ul > li > a")) {
+                    children.add(createNode(a, null));
+                }
+                break;
+            }
+            case LEAGUE: {
+                children.addAll(parseSeasons(new LeagueLoader().getRootNode(stub.getUrl(), false)));
+                break;
+            }
+        }
+        return children;
+    }
+
+    private static List<DefaultMutableTreeNode> parseSeasons(Document document) {
+        List<DefaultMutableTreeNode> seasons = new ArrayList<>();
+        for (Element option : document.select("div.desc select.gray2.onchangeurl option")) {
+            String name = JSoupUtils.getText(option);
+            String url = Utils.normalizeUrl(option.attr("value") + "results/", SITE);
+            seasons.add(new DefaultMutableTreeNode(new Category(name, url)));
+        }
+        return seasons;
+    }
+
+    /**
+     * Дети вставляются перед заглушкой, и только потом она удаляется: иначе раскрытый узел на мгновение
+     * становится листом и сворачивается.
+     */
+    private static void insert(DefaultTreeModel model, DefaultMutableTreeNode node, List<DefaultMutableTreeNode> children) {
+        if (getStub(node) == null) {
+            return;
+        }
+        DefaultMutableTreeNode stubNode = (DefaultMutableTreeNode) node.getFirstChild();
+        int[] indices = new int[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            node.insert(children.get(i), i);
+            indices[i] = i;
+        }
+        if (indices.length > 0) {
+            model.nodesWereInserted(node, indices);
+        }
+        model.removeNodeFromParent(stubNode);
+    }
+}
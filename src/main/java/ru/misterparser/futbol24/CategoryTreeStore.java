@@ -0,0 +1,215 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+import ru.misterparser.common.model.Category;
+
+import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Дерево разделов на диске отдельно от остальных настроек.
+ * <p>
+ * Настройки сохраняются на каждое изменение фильтров, а дерево из тысяч узлов - только если оно изменилось
+ * после прошлой записи. Изменения отслеживаются по событиям модели дерева. Формат компактный:
+ * узлы в прямом порядке обхода, у каждого тип, имя, ссылка и число детей, всё сжато.
+ */
+@Slf4j
+class CategoryTreeStore {
+
+    private static final CategoryTreeStore CATEGORY_TREE_STORE = new CategoryTreeStore();
+
+    private static final int VERSION = 1;
+
+    private static final byte ROOT = 0;
+    private static final byte CATEGORY = 1;
+    private static final byte STUB = 2;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final TreeModelListener treeModelListener = new TreeModelListener() {
+        @Override
+        public void treeNodesChanged(TreeModelEvent e) {
+            dirty.set(true);
+        }
+
+        @Override
+        public void treeNodesInserted(TreeModelEvent e) {
+            dirty.set(true);
+        }
+
+        @Override
+        public void treeNodesRemoved(TreeModelEvent e) {
+            dirty.set(true);
+        }
+
+        @Override
+        public void treeStructureChanged(TreeModelEvent e) {
+            dirty.set(true);
+        }
+    };
+
+    private CategoryTreeStore() {
+    }
+
+    static CategoryTreeStore get() {
+        return CATEGORY_TREE_STORE;
+    }
+
+    private static File getFile() {
+        return new File(ConfigurationUtils.getCurrentDirectory() + "categories.tree");
+    }
+
+    /**
+     * Сохранённое дерево или null, если его нет или оно не читается: тогда дерево загружается с сайта.
+     */
+    TreeModel load() {
+        File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(file.toPath()))))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            return new DefaultTreeModel(readNode(in));
+        } catch (Exception e) {
+            log.debug("Не удалось прочитать дерево разделов", e);
+            return null;
+        }
+    }
+
+    /**
+     * Дерево из файла настроек прежней версии, где оно хранилось вместе с настройками.
+     * Переносится один раз: при следующем сохранении оно запишется сюда, а из настроек пропадёт.
+     */
+    TreeModel migrate(TreeModel legacy) {
+        log.debug("Перенос дерева разделов из файла настроек");
+        dirty.set(true);
+        return legacy;
+    }
+
+    /**
+     * Отслеживание изменений дерева, в том числе замены модели целиком при обновлении.
+     */
+    void watch(JTree tree) {
+        tree.getModel().addTreeModelListener(treeModelListener);
+        tree.addPropertyChangeListener(JTree.TREE_MODEL_PROPERTY, e -> {
+            if (e.getOldValue() != null) {
+                ((TreeModel) e.getOldValue()).removeTreeModelListener(treeModelListener);
+            }
+            if (e.getNewValue() != null) {
+                ((TreeModel) e.getNewValue()).addTreeModelListener(treeModelListener);
+            }
+            dirty.set(true);
+        });
+    }
+
+    /**
+     * Сжатое дерево, если оно изменилось с прошлого вызова, иначе null.
+     * Вызывается в потоке Swing, где меняются узлы дерева.
+     */
+    byte[] snapshot(TreeModel model) {
+        if (model == null || !dirty.getAndSet(false)) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+                out.writeInt(VERSION);
+                writeNode(out, (DefaultMutableTreeNode) model.getRoot());
+            }
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            dirty.set(true);
+            return null;
+        }
+    }
+
+    /**
+     * Запись через временный файл, чтобы падение посреди записи не оставило испорченное дерево.
+     */
+    void write(byte[] snapshot) {
+        File file = getFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), snapshot);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.debug("Не удалось сохранить дерево разделов", e);
+            dirty.set(true);
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, DefaultMutableTreeNode node) throws IOException {
+        Object userObject = node.getUserObject();
+        if (userObject instanceof Category) {
+            Category category = (Category) userObject;
+            out.writeByte(CATEGORY);
+            writeString(out, category.getName());
+            writeString(out, category.getUrl());
+        } else if (userObject instanceof CategoryTreeLoader.Stub) {
+            CategoryTreeLoader.Stub stub = (CategoryTreeLoader.Stub) userObject;
+            out.writeByte(STUB);
+            out.writeByte(stub.getLevel().ordinal());
+            out.writeUTF(stub.getUrl());
+        } else {
+            out.writeByte(ROOT);
+        }
+        out.writeInt(node.getChildCount());
+        for (int i = 0; i < node.getChildCount(); i++) {
+            writeNode(out, (DefaultMutableTreeNode) node.getChildAt(i));
+        }
+    }
+
+    private static DefaultMutableTreeNode readNode(DataInputStream in) throws IOException {
+        DefaultMutableTreeNode node;
+        byte type = in.readByte();
+        switch (type) {
+            case CATEGORY:
+                node = new DefaultMutableTreeNode(new Category(readString(in), readString(in)));
+                break;
+            case STUB:
+                node = new DefaultMutableTreeNode(new CategoryTreeLoader.Stub(CategoryTreeLoader.Level.values()[in.readByte()], in.readUTF()));
+                break;
+            case ROOT:
+                node = new DefaultMutableTreeNode();
+                break;
+            default:
+                throw new IOException("Неизвестный тип узла: " + type);
+        }
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            node.add(readNode(in));
+        }
+        return node;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
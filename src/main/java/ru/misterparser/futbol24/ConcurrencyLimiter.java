@@ -0,0 +1,134 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ограничитель числа одновременных запросов к сайту по схеме AIMD.
+ * <p>
+ * Пока ответы нормальные, лимит растёт на единицу за "окно" запросов.
+ * Страница с капчей или резкий рост задержки уменьшают лимит в разы.
+ */
+@Slf4j
+class ConcurrencyLimiter {
+
+    private static final ConcurrencyLimiter FUTBOL24 = new ConcurrencyLimiter("futbol24.com", 8, 1, 128);
+
+    private static final double CAPTCHA_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.8;
+    private static final double LATENCY_SPIKE = 2.5;
+    private static final double ALPHA = 0.1;
+
+    private final String host;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private double latency = -1;
+    private long lastDecrease;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    enum Outcome {
+        SUCCESS,
+        CAPTCHA,
+        ERROR
+    }
+
+    private ConcurrencyLimiter(String host, int initialLimit, int minLimit, int maxLimit) {
+        this.host = host;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    static ConcurrencyLimiter get() {
+        return FUTBOL24;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Разрешение без блокировки потока: future завершается, когда освободится место под лимитом.
+     */
+    synchronized CompletableFuture<Void> acquireAsync() {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    void release(Outcome outcome, long latency) {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            releaseLocked(outcome, latency);
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+        }
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                // ожидание отменили между выдачей разрешения и завершением
+                release(Outcome.ERROR, 0);
+            }
+        }
+    }
+
+    private void releaseLocked(Outcome outcome, long latency) {
+        inFlight--;
+        int before = (int) limit;
+        long now = System.currentTimeMillis();
+        if (outcome == Outcome.CAPTCHA) {
+            decrease(CAPTCHA_DECREASE, now);
+        } else if (outcome == Outcome.SUCCESS) {
+            if (this.latency > 0 && latency > this.latency * LATENCY_SPIKE) {
+                decrease(LATENCY_DECREASE, now);
+            } else {
+                limit = Math.min(limit + 1 / limit, maxLimit);
+            }
+            this.latency = this.latency < 0 ? latency : this.latency * (1 - ALPHA) + latency * ALPHA;
+        }
+        if ((int) limit != before) {
+            log.debug("Лимит одновременных запросов к " + host + ": " + (int) limit + " (было " + before + ", в работе " + inFlight + ")");
+        }
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    int getMaxLimit() {
+        return maxLimit;
+    }
+
+    private void decrease(double k, long now) {
+        // после снижения даём лимиту поработать хотя бы одну среднюю задержку, иначе одна волна ошибок обнулит его
+        if (now - lastDecrease < Math.max(latency, 1000)) {
+            return;
+        }
+        lastDecrease = now;
+        limit = Math.max(limit * k, minLimit);
+    }
+}
@@ -1,5 +1,6 @@
 package ru.misterparser.futbol24;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import ru.misterparser.common.configuration.ConfigurationSetter;
 import ru.misterparser.common.gui.GuiUtils;
@@ -7,6 +8,7 @@ import ru.misterparser.common.model.NamedElement;
 
 import javax.swing.tree.TreeModel;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -32,7 +34,29 @@ public class Configuration implements Serializable, ConfigurationSetter<Configur
         Configuration.configuration = configuration;
     }
 
+    /**
+     * Копия для записи на диск в фоне, пока поток Swing меняет настройки. Дерево разделов в копию не входит.
+     */
+    Configuration copy() {
+        Configuration copy = new Configuration();
+        copy.CURRENT_DIRECTORY = CURRENT_DIRECTORY != null ? SerializationUtils.clone(CURRENT_DIRECTORY) : null;
+        copy.MINUTES = MINUTES != null ? new ArrayList<>(MINUTES) : null;
+        copy.TOTALS = TOTALS != null ? new ArrayList<>(TOTALS) : null;
+        copy.SUBTRACTS = SUBTRACTS != null ? new ArrayList<>(SUBTRACTS) : null;
+        copy.GOAL_FILTER_TYPE = GOAL_FILTER_TYPE;
+        copy.SEARCH = SEARCH;
+        copy.MATCH_SUMMARY_TYPE = MATCH_SUMMARY_TYPE;
+        copy.NUMBER_SEASONS = NUMBER_SEASONS;
+        copy.MIN_45 = MIN_45;
+        copy.MIN_90 = MIN_90;
+        return copy;
+    }
+
     GuiUtils.DirectoryHolder CURRENT_DIRECTORY;
+    /**
+     * Сохраняется отдельно, см. CategoryTreeStore. Поле не transient, чтобы прочитать дерево
+     * из файлов настроек прежних версий, в записываемую копию оно не попадает.
+     */
     TreeModel CATEGORIES;
     List<String> MINUTES;
     List<String> TOTALS;
@@ -89,9 +113,11 @@ public class Configuration implements Serializable, ConfigurationSetter<Configur
             return name;
         }
 
-        public List<Match> calc(List<Match> matches) {
-            int m = (int) Math.ceil(k * matches.size());
-            return matches.subList(0, m);
+        /**
+         * Сколько первых из size записей вычитается.
+         */
+        public int count(int size) {
+            return (int) Math.ceil(k * size);
         }
     }
 }
@@ -0,0 +1,78 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import javax.swing.tree.TreeModel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенное сохранение настроек в фоне.
+ * <p>
+ * Поля фильтров применяют настройки на каждое нажатие клавиши: вызовы, идущие чаще DELAY, дают одну запись
+ * на диск, и поток Swing её не ждёт. Дерево разделов в настройки не входит и пишется CategoryTreeStore,
+ * только когда изменилось.
+ */
+@Slf4j
+class ConfigurationSaver {
+
+    private static final long DELAY = 500;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ConfigurationSaver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object writeLock = new Object();
+    private ScheduledFuture<?> pending;
+    private Configuration pendingConfiguration;
+    private byte[] pendingTree;
+
+    /**
+     * Вызывается в потоке Swing: снимки настроек и дерева делаются сразу, запись - после паузы во вводе.
+     */
+    synchronized void save(TreeModel categories) {
+        pendingConfiguration = Configuration.get().copy();
+        byte[] tree = CategoryTreeStore.get().snapshot(categories);
+        if (tree != null) {
+            pendingTree = tree;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::flush, DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Немедленная запись, в том числе при выходе из программы.
+     */
+    void flush() {
+        Configuration configuration;
+        byte[] tree;
+        synchronized (this) {
+            configuration = pendingConfiguration;
+            tree = pendingTree;
+            pendingConfiguration = null;
+            pendingTree = null;
+        }
+        if (configuration == null && tree == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            try {
+                if (configuration != null) {
+                    ConfigurationUtils.saveConfiguration(configuration);
+                }
+                if (tree != null) {
+                    CategoryTreeStore.get().write(tree);
+                }
+                log.debug("Настройки сохранены" + (tree != null ? ", дерево разделов " + tree.length + " байт" : ""));
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Журнал текущего обхода для продолжения после остановки или падения программы.
+ * <p>
+ * Записи делаются по ходу обхода: план (разделы в порядке обработки), разобранные страницы результатов
+ * со ссылками на матчи и следующую страницу, найденные матчи и матчи без информации, завершённые разделы.
+ * Журнал лежит в SegmentStore, поэтому недописанная при падении запись отбрасывается при открытии.
+ * Новый обход начинает журнал заново.
+ */
+@Slf4j
+class CrawlJournal {
+
+    private static final String PLAN = "plan";
+    private static final String PAGE = "page:";
+    private static final String MATCH = "match:";
+    private static final String CATEGORY = "category:";
+
+    private static volatile CrawlJournal crawlJournal;
+
+    private final SegmentStore store;
+
+    /**
+     * Разобранная страница результатов: ссылки на матчи, перенесённые матчи и следующая страница (null - последняя).
+     */
+    @Value
+    static class Page {
+        List<String> itemUrls;
+        Set<String> postponedUrls;
+        String nextPage;
+    }
+
+    @Value
+    static class Entry {
+        String url;
+        int categoriesOrder;
+        MatchPageExtractor.Result result;
+    }
+
+    private CrawlJournal() throws IOException {
+        store = new SegmentStore(new File(ConfigurationUtils.getCurrentDirectory() + "journal/"));
+    }
+
+    /**
+     * null, если журнал не удалось открыть: тогда обход нельзя будет продолжить.
+     */
+    static CrawlJournal get() {
+        if (crawlJournal == null) {
+            synchronized (CrawlJournal.class) {
+                if (crawlJournal == null) {
+                    try {
+                        crawlJournal = new CrawlJournal();
+                    } catch (Exception e) {
+                        log.debug("Не удалось открыть журнал обхода", e);
+                        return null;
+                    }
+                }
+            }
+        }
+        return crawlJournal;
+    }
+
+    void start(List<Pair<String, List<String>>> plan) {
+        try {
+            store.clear();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(plan.size());
+                for (Pair<String, List<String>> category : plan) {
+                    out.writeUTF(category.getLeft());
+                    writeStrings(out, category.getRight());
+                }
+            }
+            store.put(PLAN, bytes.toByteArray());
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    /**
+     * Обход завершён: журнал больше не нужен.
+     */
+    void clear() {
+        try {
+            store.clear();
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    boolean hasPlan() {
+        return store.contains(PLAN);
+    }
+
+    /**
+     * Разделы прерванного обхода в исходном порядке, null - журнал пуст.
+     */
+    List<Pair<String, List<String>>> getPlan() {
+        try {
+            byte[] value = store.get(PLAN);
+            if (value == null) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                int size = in.readInt();
+                List<Pair<String, List<String>>> plan = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    plan.add(Pair.of(in.readUTF(), readStrings(in)));
+                }
+                return plan;
+            }
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    void page(String url, Page page) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeStrings(out, page.getItemUrls());
+                writeStrings(out, new ArrayList<>(page.getPostponedUrls()));
+                out.writeUTF(page.getNextPage() != null ? page.getNextPage() : "");
+            }
+            store.put(PAGE + url, bytes.toByteArray());
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    Page getPage(String url) {
+        try {
+            byte[] value = store.get(PAGE + url);
+            if (value == null) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                List<String> itemUrls = readStrings(in);
+                Set<String> postponedUrls = new HashSet<>(readStrings(in));
+                String nextPage = in.readUTF();
+                return new Page(itemUrls, postponedUrls, nextPage.isEmpty() ? null : nextPage);
+            }
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    void match(String url, int categoriesOrder, MatchPageExtractor.Result result) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(categoriesOrder);
+                out.write(MatchRecordStore.encode(result));
+            }
+            store.put(MATCH + url, bytes.toByteArray());
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    /**
+     * Все матчи журнала. Записи другой версии разбора пропускаются, такие матчи будут обработаны заново.
+     */
+    List<Entry> getMatches() {
+        List<Entry> entries = new ArrayList<>();
+        for (String key : store.keys()) {
+            if (!key.startsWith(MATCH)) {
+                continue;
+            }
+            try {
+                byte[] value = store.get(key);
+                if (value == null) {
+                    continue;
+                }
+                int categoriesOrder = ByteBuffer.wrap(value).getInt();
+                MatchPageExtractor.Result result = MatchRecordStore.decode(Arrays.copyOfRange(value, 4, value.length));
+                if (result != null) {
+                    entries.add(new Entry(key.substring(MATCH.length()), categoriesOrder, result));
+                }
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }
+        return entries;
+    }
+
+    void categoryDone(String url) {
+        try {
+            store.put(CATEGORY + url, new byte[0]);
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    boolean isCategoryDone(String url) {
+        return store.contains(CATEGORY + url);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+}
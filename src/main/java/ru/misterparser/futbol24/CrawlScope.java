@@ -0,0 +1,160 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Узел дерева задач обхода: раздел → страница → матч.
+ * <p>
+ * Задача, запущенная через fork, получает собственный дочерний scope и считается завершённой только
+ * после всех своих подзадач. Ожидание подзадач не занимает поток, поэтому дерево любой глубины
+ * работает на пуле фиксированного размера. Отмена scope отменяет всё поддерево, прерывая выполняющиеся потоки.
+ */
+@Slf4j
+class CrawlScope {
+
+    interface Task {
+        void run(CrawlScope scope) throws Exception;
+    }
+
+    private final Executor executor;
+    private final Set<CompletableFuture<?>> completions = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> tracked = ConcurrentHashMap.newKeySet();
+    private final Set<Running> running = ConcurrentHashMap.newKeySet();
+    private final Set<CrawlScope> children = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    CrawlScope(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Возвращает завершение задачи вместе со всеми её подзадачами.
+     */
+    CompletableFuture<Void> fork(Task task) throws InterruptedException {
+        checkCancelled();
+        CrawlScope child = new CrawlScope(executor);
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        Running current = new Running();
+        children.add(child);
+        completions.add(completion);
+        running.add(current);
+        executor.execute(() -> {
+            try {
+                if (current.start()) {
+                    task.run(child);
+                }
+            } catch (InterruptedException e) {
+                child.cancel();
+            } catch (Exception e) {
+                child.cancel();
+                log.debug("Exception", e);
+            } finally {
+                current.finish();
+                running.remove(current);
+            }
+            child.completion().whenComplete((r, t) -> {
+                children.remove(child);
+                completion.complete(null);
+            });
+        });
+        return completion.copy();
+    }
+
+    /**
+     * Привязывает к scope уже запущенную асинхронную операцию: join её дожидается, cancel её отменяет.
+     * Ошибку операции scope только пишет в лог, обработать её должен сам вызывающий.
+     */
+    void track(CompletableFuture<?> future) throws InterruptedException {
+        tracked.add(future);
+        completions.add(future.handle((r, t) -> {
+            if (t != null && !(t instanceof CancellationException) && !(t.getCause() instanceof CancellationException)) {
+                log.debug("Ошибка отслеживаемой операции", t);
+            }
+            return null;
+        }));
+        if (cancelled) {
+            future.cancel(true);
+            throw new InterruptedException("Обработка отменена");
+        }
+    }
+
+    void join() throws InterruptedException {
+        try {
+            completion().get();
+        } catch (ExecutionException e) {
+            log.debug("Exception", e.getCause());
+        }
+        checkCancelled();
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (CrawlScope child : children) {
+            child.cancel();
+        }
+        for (Running r : running) {
+            r.cancel();
+        }
+        for (CompletableFuture<?> future : tracked) {
+            future.cancel(true);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Вызывается, когда задача-владелец уже отработала и новых подзадач в этом scope не появится.
+     */
+    private CompletableFuture<Void> completion() {
+        int size = completions.size();
+        return CompletableFuture.allOf(completions.toArray(new CompletableFuture[0])).thenCompose(r ->
+                completions.size() == size ? CompletableFuture.completedFuture(null) : completion());
+    }
+
+    private void checkCancelled() throws InterruptedException {
+        if (cancelled) {
+            throw new InterruptedException("Обработка отменена");
+        }
+    }
+
+    /**
+     * Поток, выполняющий задачу. Пул переиспользует потоки, поэтому прерывать можно только пока задача идёт.
+     */
+    private class Running {
+
+        private Thread thread;
+        private boolean done;
+
+        synchronized boolean start() {
+            if (cancelled || done) {
+                done = true;
+                return false;
+            }
+            thread = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void finish() {
+            done = true;
+            thread = null;
+            // флаг прерывания не должен достаться следующей задаче этого потока
+            Thread.interrupted();
+        }
+
+        synchronized void cancel() {
+            done = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -4,28 +4,33 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import ru.misterparser.common.Utils;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import ru.misterparser.common.collection.ArrayListValuedLinkedHashMap;
 
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 class Exporter {
 
     private static final DateTimeFormatter SHEET_NAME_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH_mm");
+    private static final int DEFAULT_ROW_WINDOW = 100;
 
     private final String filename;
     private final List<Match> matches;
     private final Map<List<String>, List<String>> noInfoUrls;
+    private final MatchFilter matchFilter = MatchFilter.get();
 
     private int rowIndex;
 
@@ -35,9 +40,16 @@ class Exporter {
         this.noInfoUrls = noInfoUrls;
     }
 
+    /**
+     * Книга пишется потоково: в памяти держится только окно из последних exportRowWindow строк (0 или меньше -
+     * все строки, как раньше), остальные сбрасываются во временный файл, сжатый при exportCompressTempFiles.
+     */
     void save() {
-        try (FileOutputStream fout = new FileOutputStream(filename);
-             Workbook workbook = new XSSFWorkbook()) {
+        ParserProperties properties = ParserProperties.get();
+        int rowWindow = properties.getInt("exportRowWindow", DEFAULT_ROW_WINDOW);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowWindow > 0 ? rowWindow : -1);
+        workbook.setCompressTempFiles(properties.getBoolean("exportCompressTempFiles", true));
+        try (FileOutputStream fout = new FileOutputStream(filename)) {
             String sheetName = LocalDateTime.now().format(SHEET_NAME_DATE_TIME_FORMATTER);
             sheetName = sheetName.replace(":", "");
             Sheet sheet = workbook.createSheet(sheetName);
@@ -45,6 +57,14 @@ class Exporter {
             workbook.write(fout);
         } catch (Exception e) {
             log.debug("Exception", e);
+        } finally {
+            // временные файлы листа удаляются только так
+            workbook.dispose();
+            try {
+                workbook.close();
+            } catch (IOException e) {
+                log.debug("Exception", e);
+            }
         }
     }
 
@@ -57,9 +77,14 @@ class Exporter {
         }
         log.debug("По минутам отфильтровано матчей: " + matchesByCategories.values().size());
         writeHeader(sheet);
+        // категории считаются параллельно, а строки пишутся по порядку, как только готова очередная
+        List<Map.Entry<List<String>, CompletableFuture<Stats>>> rows = new ArrayList<>();
         for (Map.Entry<List<String>, Collection<Match>> entry : matchesByCategories.asMap().entrySet()) {
+            rows.add(new AbstractMap.SimpleEntry<>(entry.getKey(), CompletableFuture.supplyAsync(() -> calc(entry.getKey(), entry.getValue()))));
+        }
+        for (Map.Entry<List<String>, CompletableFuture<Stats>> entry : rows) {
             Row row = sheet.createRow(rowIndex++);
-            writeRow(row, entry);
+            writeRow(row, entry.getKey(), entry.getValue().join());
         }
     }
 
@@ -90,124 +115,145 @@ class Exporter {
         row.createCell(columnIndex++).setCellValue("Нет информации");
     }
 
-    private void writeRow(Row row, Map.Entry<List<String>, Collection<Match>> entry) {
-        log.debug("Обработка: " + entry.getKey());
-        log.debug("Матчей в категории: " + entry.getValue().size());
+    private void writeRow(Row row, List<String> categories, Stats stats) {
         int columnIndex = 0;
-        row.createCell(columnIndex++).setCellValue(entry.getKey().get(1));
-        row.createCell(columnIndex++).setCellValue(entry.getKey().get(2));
-        row.createCell(columnIndex++).setCellValue(entry.getKey().get(3));
-        if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.TOTAL) {
-            for (String total : Configuration.get().TOTALS) {
-                log.debug("Обработка тотала: " + total);
-                row.createCell(columnIndex++).setCellValue(total);
-                for (String minute : Configuration.get().MINUTES) {
-                    row.createCell(columnIndex++).setCellValue(calcTotalByMinute(total, minute, entry.getValue()));
-                }
-                row.createCell(columnIndex++).setCellValue(calcSummary(entry.getValue(), total));
-            }
-        } else if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.SUBTRACT) {
-            for (String subtract : Configuration.get().SUBTRACTS) {
-                log.debug("Обработка разности: " + subtract);
-                row.createCell(columnIndex++).setCellValue(subtract);
-                for (String minute : Configuration.get().MINUTES) {
-                    row.createCell(columnIndex++).setCellValue(calcSubtractByMinute(subtract, minute, entry.getValue()));
-                }
-                row.createCell(columnIndex++).setCellValue(calcSummary(entry.getValue(), subtract));
+        row.createCell(columnIndex++).setCellValue(categories.get(1));
+        row.createCell(columnIndex++).setCellValue(categories.get(2));
+        row.createCell(columnIndex++).setCellValue(categories.get(3));
+        List<String> ranges = getRanges();
+        for (int t = 0; t < ranges.size(); t++) {
+            row.createCell(columnIndex++).setCellValue(ranges.get(t));
+            for (int m = 0; m < Configuration.get().MINUTES.size(); m++) {
+                row.createCell(columnIndex++).setCellValue(stats.byMinute[t][m]);
             }
+            row.createCell(columnIndex++).setCellValue(stats.summary[t]);
         }
-        List<String> list = noInfoUrls.get(entry.getKey());
+        List<String> list = noInfoUrls.get(categories);
         //noinspection UnusedAssignment
         row.createCell(columnIndex++).setCellValue(list != null ? list.size() : 0);
     }
 
-    private double calcSummary(Collection<Match> matches, String totalOrSubtract) {
-        List<Match> filtered = new ArrayList<>();
-        for (Match match : matches) {
-            Pair<Integer, Integer> score;
-            if (Configuration.get().MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_HT) {
-                score = match.getScoreHt();
-            } else if (Configuration.get().MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_FT) {
-                score = match.getScoreFt();
-            } else {
-                throw new IllegalArgumentException("Неверное значение MATCH_SUMMARY_TYPE: " + Configuration.get().MATCH_SUMMARY_TYPE);
-            }
-            int result;
-            if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.TOTAL) {
-                result = score.getLeft() + score.getRight();
-            } else if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.SUBTRACT) {
-                result = Math.abs(score.getLeft() - score.getRight());
-            } else {
-                throw new IllegalArgumentException("Неверное значение GOAL_FILTER_TYPE: " + Configuration.get().GOAL_FILTER_TYPE);
-            }
-            if (Utils.checkInRange(result + "", totalOrSubtract, false)) {
-                filtered.add(match);
-            } else {
-                log.debug("Не прошёл проверку для ИТОГО: " + match.getUrl());
-            }
+    /**
+     * Тоталы или разности, смотря по типу фильтра.
+     */
+    private static List<String> getRanges() {
+        if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.TOTAL) {
+            return Configuration.get().TOTALS;
+        } else if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.SUBTRACT) {
+            return Configuration.get().SUBTRACTS;
         }
-        log.debug("Итого матчей: " + filtered.size());
-        {
-            List<Match>
-                    count45 = new ArrayList<>(),
-                    count90 = new ArrayList<>(),
-                    count45plus = new ArrayList<>(),
-                    count90plus = new ArrayList<>();
-            for (Match filteredMatch : filtered) {
-                for (Match.Goal goal : filteredMatch.getGoals()) {
-                    if (goal.getMinute().startsWith("45+")) {
-                        count45plus.add(filteredMatch);
-                    } else if (goal.getMinute().startsWith("90+")) {
-                        count90plus.add(filteredMatch);
-                    } else if (goal.getMinute().equals("45")) {
-                        count45.add(filteredMatch);
-                    } else if (goal.getMinute().equals("90")) {
-                        count90.add(filteredMatch);
-                    }
-                }
-            }
-            if (Configuration.get().MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_HT) {
-                log.debug("Из них матчей с голами на 45 минуте: " + count45.size());
-                log.debug("Из них матчей с голами на 45+ минуте: " + count45plus.size());
-                log.debug(Configuration.get().MIN_45.toString());
-                filtered.removeAll(Configuration.get().MIN_45.calc(count45));
-                filtered.removeAll(count45plus);
-            } else if (Configuration.get().MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_FT) {
-                log.debug("Из них матчей с голами на 90 минуте: " + count90.size());
-                log.debug("Из них матчей с голами на 90+ минуте: " + count90plus.size());
-                log.debug(Configuration.get().MIN_90.toString());
-                filtered.removeAll(Configuration.get().MIN_90.calc(count90));
-                filtered.removeAll(count90plus);
-            }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Значения строки категории: по каждому тоталу или разности - число матчей по минутам и итого.
+     */
+    private static class Stats {
+        final double[][] byMinute;
+        final double[] summary;
 
-            log.debug("После вычитания матчей: " + filtered.size());
+        Stats(int ranges, int minutes) {
+            byMinute = new double[ranges][minutes];
+            summary = new double[ranges];
         }
-        return filtered.size();
     }
 
-    private double calcTotalByMinute(String total, String minute, Collection<Match> matches) {
-        int c = 0;
+    /**
+     * Все значения строки за один проход по матчам категории.
+     * <p>
+     * По минутам: матч считается в ячейке, если у него есть гол на этой минуте с тоталом или разностью
+     * перед голом в диапазоне. Итого: матчи, у которых тотал или разность счёта тайма (HT) или матча (FT)
+     * в диапазоне, кроме матчей с голами в добавленное время (45+ или 90+) и части матчей с голами
+     * на 45 или 90 минуте. Эта часть - первые голы на 45 (90) минуте по порядку матчей, сколько их велит
+     * MIN_45 (MIN_90), и матч с несколькими такими голами занимает несколько мест.
+     */
+    private Stats calc(List<String> categories, Collection<Match> matches) {
+        log.debug("Обработка: " + categories);
+        log.debug("Матчей в категории: " + matches.size());
+        Configuration configuration = Configuration.get();
+        int ranges = getRanges().size();
+        Stats stats = new Stats(ranges, configuration.MINUTES.size());
+        if (ranges == 0) {
+            return stats;
+        }
+        boolean byHt;
+        if (configuration.MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_HT) {
+            byHt = true;
+        } else if (configuration.MATCH_SUMMARY_TYPE == Configuration.MatchSummaryType.BY_FT) {
+            byHt = false;
+        } else {
+            throw new IllegalArgumentException("Неверное значение MATCH_SUMMARY_TYPE: " + configuration.MATCH_SUMMARY_TYPE);
+        }
+        boolean subtract = configuration.GOAL_FILTER_TYPE == Configuration.GoalFilterType.SUBTRACT;
+        String lastMinute = byHt ? "45" : "90";
+        String addedTime = lastMinute + "+";
+        int n = matches.size();
+        // на каждый матч: тотал или разность итогового счёта, число голов на 45 (90) минуте, есть ли голы в добавленное время
+        int[] values = new int[n];
+        int[] lastMinuteGoals = new int[n];
+        boolean[] addedTimeGoals = new boolean[n];
+        BitSet[] hits = new BitSet[ranges];
+        for (int t = 0; t < ranges; t++) {
+            hits[t] = new BitSet();
+        }
+        int i = 0;
         for (Match match : matches) {
-            for (Match.Goal goal : match.getGoals()) {
-                if (FilterUtils.checkGoalByMinute(goal, minute) && FilterUtils.checkByTotal(goal, total)) {
-                    c++;
-                    break;
+            Pair<Integer, Integer> score = byHt ? match.getScoreHt() : match.getScoreFt();
+            values[i] = subtract ? Math.abs(score.getLeft() - score.getRight()) : score.getLeft() + score.getRight();
+            for (int t = 0; t < ranges; t++) {
+                hits[t].clear();
+            }
+            for (int goal = 0; goal < match.getGoalCount(); goal++) {
+                String minute = match.getGoalMinute(goal);
+                if (minute == null) {
+                    continue;
+                }
+                if (minute.startsWith(addedTime)) {
+                    addedTimeGoals[i] = true;
+                } else if (minute.equals(lastMinute)) {
+                    lastMinuteGoals[i]++;
+                }
+                BitSet minuteMask = matchFilter.getMinuteMask(match, goal);
+                if (!minuteMask.isEmpty()) {
+                    int value = matchFilter.getValue(match, goal);
+                    for (int t = 0; t < ranges; t++) {
+                        if (matchFilter.isInRange(t, value)) {
+                            hits[t].or(minuteMask);
+                        }
+                    }
+                }
+            }
+            for (int t = 0; t < ranges; t++) {
+                for (int m = hits[t].nextSetBit(0); m >= 0; m = hits[t].nextSetBit(m + 1)) {
+                    stats.byMinute[t][m]++;
                 }
             }
+            i++;
         }
-        return c;
-    }
-
-    private double calcSubtractByMinute(String subtract, String minute, Collection<Match> matches) {
-        int c = 0;
-        for (Match match : matches) {
-            for (Match.Goal goal : match.getGoals()) {
-                if (FilterUtils.checkGoalByMinute(goal, minute) && FilterUtils.checkBySubtract(goal, subtract)) {
-                    c++;
-                    break;
+        Configuration.SubtractType subtractType = byHt ? configuration.MIN_45 : configuration.MIN_90;
+        for (int t = 0; t < ranges; t++) {
+            int filtered = 0;
+            int lastMinuteTotal = 0;
+            for (int j = 0; j < n; j++) {
+                if (matchFilter.isInRange(t, values[j])) {
+                    filtered++;
+                    lastMinuteTotal += lastMinuteGoals[j];
+                }
+            }
+            int subtracted = subtractType.count(lastMinuteTotal);
+            int removed = 0;
+            int position = 0;
+            for (int j = 0; j < n; j++) {
+                if (matchFilter.isInRange(t, values[j])) {
+                    if (addedTimeGoals[j] || lastMinuteGoals[j] > 0 && position < subtracted) {
+                        removed++;
+                    }
+                    position += lastMinuteGoals[j];
                 }
             }
+            log.debug("Итого матчей: " + filtered + ", после вычитания матчей: " + (filtered - removed));
+            stats.summary[t] = filtered - removed;
         }
-        return c;
+        return stats;
     }
 }
@@ -0,0 +1,70 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import ru.misterparser.common.Utils;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Кеш страниц в каталоге cache/ в том же формате, что и Utils.getPageWithCache.
+ */
+@Slf4j
+class FilePageCache implements PageCache {
+
+    private static final FilePageCache FILE_PAGE_CACHE = new FilePageCache();
+
+    private FilePageCache() {
+    }
+
+    static FilePageCache get() {
+        return FILE_PAGE_CACHE;
+    }
+
+    String getDirectory() {
+        return ConfigurationUtils.getCurrentDirectory() + "cache/";
+    }
+
+    @Override
+    public boolean contains(String url, Map<String, String> headers) {
+        return Utils.isExistsCacheKey(url, headers, getDirectory());
+    }
+
+    @Override
+    public String get(String url, Map<String, String> headers, long maxAge) {
+        if (!contains(url, headers)) {
+            return null;
+        }
+        File file = getFile(url, headers);
+        if (System.currentTimeMillis() - file.lastModified() > maxAge) {
+            return null;
+        }
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String url, Map<String, String> headers, String page) {
+        try {
+            FileUtils.writeStringToFile(getFile(url, headers), page, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    @Override
+    public boolean remove(String url, Map<String, String> headers) {
+        return contains(url, headers) && FileUtils.deleteQuietly(getFile(url, headers));
+    }
+
+    private File getFile(String url, Map<String, String> headers) {
+        return new File(getDirectory() + Utils.getCacheKeyByUrl(url, headers));
+    }
+}
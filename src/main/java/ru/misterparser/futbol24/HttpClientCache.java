@@ -0,0 +1,170 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import ru.misterparser.common.PoolingHttpClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP-клиенты, закреплённые за прокси.
+ * <p>
+ * Клиент живёт, пока прокси не попал в карантин, поэтому соединения через прокси остаются открытыми
+ * между запросами, а куки сайта сохраняются в хранилище клиента. Запросы берут клиент через lease,
+ * чтобы карантин не обрывал запросы, которые ещё идут через этот прокси.
+ */
+@Slf4j
+@SuppressWarnings("deprecation")
+class HttpClientCache {
+
+    private static final HttpClientCache HTTP_CLIENT_CACHE = new HttpClientCache();
+
+    private final Map<ProxyPool.Entry, Client> clients = new ConcurrentHashMap<>();
+
+    private HttpClientCache() {
+        ProxyPool.get().addQuarantineListener(this::evict);
+    }
+
+    static HttpClientCache get() {
+        return HTTP_CLIENT_CACHE;
+    }
+
+    /**
+     * Клиент прокси на время одного запроса. Закрыть после запроса.
+     */
+    Lease lease(ProxyPool.Entry proxy) {
+        while (true) {
+            Client client = clients.computeIfAbsent(proxy, this::createClient);
+            if (client.lease()) {
+                return new Lease(proxy, client);
+            }
+            // клиент только что убран из-за карантина, берём новый
+            clients.remove(proxy, client);
+        }
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    /**
+     * Закрывает клиент аренды, обрывая её запрос. Другие запросы через этот клиент тоже оборвутся
+     * и перейдут на следующий прокси, новые запросы через прокси получат новый клиент.
+     */
+    void abort(Lease lease) {
+        clients.remove(lease.proxy, lease.client);
+        lease.client.abort();
+    }
+
+    private Client createClient(ProxyPool.Entry proxy) {
+        DefaultHttpClient httpClient = PoolingHttpClient.getHttpClient(proxy.getProxyInfo(), true, Configuration.NETWORK_TIMEOUT);
+        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+        log.debug("Создан клиент для прокси " + proxy + ", всего клиентов: " + (clients.size() + 1));
+        return new Client(httpClient);
+    }
+
+    /**
+     * Прокси в карантине: новые запросы получат другой клиент, а запросы, которые ещё идут через этот,
+     * доработают. Менеджер соединений закрывается, когда вернётся последний из них.
+     */
+    private void evict(ProxyPool.Entry proxy) {
+        Client client = clients.remove(proxy);
+        if (client != null) {
+            client.evict();
+        }
+    }
+
+    static class Lease implements AutoCloseable {
+
+        private final ProxyPool.Entry proxy;
+        private final Client client;
+
+        private Lease(ProxyPool.Entry proxy, Client client) {
+            this.proxy = proxy;
+            this.client = client;
+        }
+
+        DefaultHttpClient getHttpClient() {
+            return client.httpClient;
+        }
+
+        @Override
+        public void close() {
+            client.release();
+        }
+    }
+
+    private static class Client {
+
+        private final DefaultHttpClient httpClient;
+        private int leases;
+        private boolean evicted;
+        private boolean shutdown;
+
+        private Client(DefaultHttpClient httpClient) {
+            this.httpClient = httpClient;
+        }
+
+        private synchronized boolean lease() {
+            if (evicted) {
+                return false;
+            }
+            leases++;
+            return true;
+        }
+
+        private void release() {
+            synchronized (this) {
+                leases--;
+                if (!evicted || leases > 0 || shutdown) {
+                    return;
+                }
+                shutdown = true;
+            }
+            shutdown();
+        }
+
+        private void evict() {
+            synchronized (this) {
+                evicted = true;
+                if (leases > 0 || shutdown) {
+                    closeIdleConnections();
+                    return;
+                }
+                shutdown = true;
+            }
+            shutdown();
+        }
+
+        private void abort() {
+            synchronized (this) {
+                evicted = true;
+                if (shutdown) {
+                    return;
+                }
+                shutdown = true;
+            }
+            shutdown();
+        }
+
+        private void closeIdleConnections() {
+            try {
+                httpClient.getConnectionManager().closeExpiredConnections();
+                httpClient.getConnectionManager().closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }
+
+        private void shutdown() {
+            try {
+                httpClient.getConnectionManager().shutdown();
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }
+    }
+}
@@ -5,13 +5,9 @@ import org.apache.commons.lang3.NotImplementedException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import ru.misterparser.common.Utils;
-import ru.misterparser.common.configuration.ConfigurationUtils;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Properties;
 
 /**
  * Created with IntelliJ IDEA.
@@ -22,29 +18,34 @@ import java.util.Properties;
 @Slf4j
 class LeagueLoader extends Loader {
 
-    @SuppressWarnings("FieldCanBeLocal")
-    private Properties parserProperties = new Properties();
-
     LeagueLoader() {
-        try {
-            parserProperties.load(new FileInputStream(ConfigurationUtils.getCurrentDirectory() + "parser.properties"));
-        } catch (FileNotFoundException ignored) {
-        } catch (Exception e) {
-            log.debug("Exception", e);
-        }
-        isCache = Boolean.parseBoolean(parserProperties.getProperty("isCache", "false"));
         Utils.setTryCount(1);
         Utils.setTimeoutIOError(2000);
     }
 
     Document getRootNode(String url, boolean ajax) throws InterruptedException {
+        String page = fetch(url, getHeaders(ajax));
+        return Jsoup.parse(page);
+    }
+
+    /**
+     * Страница с сайта в обход кеша, свежая копия заменяет кешированную.
+     */
+    Document refreshRootNode(String url, boolean ajax) throws InterruptedException {
+        Map<String, String> headers = getHeaders(ajax);
+        if (isCache) {
+            PageCache.get().remove(url, headers);
+        }
+        String page = fetch(url, headers);
+        return Jsoup.parse(page);
+    }
+
+    private static Map<String, String> getHeaders(boolean ajax) {
         Map<String, String> headers = new LinkedHashMap<>();
         if (ajax) {
             headers.put("X-Requested-With", "XMLHttpRequest");
         }
-        String page = fetch(url, headers);
-        Thread.sleep(1000);
-        return Jsoup.parse(page);
+        return headers;
     }
 
     @Override
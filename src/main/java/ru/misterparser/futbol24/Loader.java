@@ -1,21 +1,21 @@
 package ru.misterparser.futbol24;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import ru.misterparser.common.ControlledRunnable;
-import ru.misterparser.common.PoolingHttpClient;
 import ru.misterparser.common.Utils;
-import ru.misterparser.common.configuration.ConfigurationUtils;
-import ru.misterparser.common.proxy.ProxyInfo;
-import ru.misterparser.common.proxy.ProxyUtils;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @SuppressWarnings("deprecation")
@@ -23,53 +23,283 @@ abstract class Loader extends ControlledRunnable {
 
     private static final String ENCODING = "UTF-8";
 
-    private volatile ProxyInfo currentProxy;
-    private final List<ProxyInfo> proxyInfos = new CopyOnWriteArrayList<>();
+    private static final ExecutorService BLOCKING_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "BlockingFetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // запросы, которые сейчас выполняются: одна ссылка загружается один раз, сколько бы потоков её ни ждало
+    private static final Map<String, Flight> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    enum Engine {
+        APACHE,
+        OKHTTP
+    }
+
+    private final ProxyPool proxyPool = ProxyPool.get();
+    private final ConcurrencyLimiter concurrencyLimiter = ConcurrencyLimiter.get();
+    private final HttpClientCache httpClientCache = HttpClientCache.get();
+    private final PageCache pageCache = PageCache.get();
+    // запросы этого обхода, которые ждут ответа сайта: их обрывает cancelFetches
+    private final Set<HttpClientCache.Lease> leases = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<String>> requests = ConcurrentHashMap.newKeySet();
     boolean isCache;
+    Engine engine;
+
+    Loader() {
+        isCache = ParserProperties.get().getBoolean("isCache", false);
+        try {
+            engine = Engine.valueOf(ParserProperties.get().getString("engine", Engine.APACHE.name()).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.debug("Неизвестный engine в parser.properties, используется " + Engine.APACHE);
+            engine = Engine.APACHE;
+        }
+    }
 
-    private synchronized void init() throws InterruptedException {
-        while (proxyInfos.size() == 0) {
-            ProxyUtils.loadFromFile(proxyInfos, new ArrayList<>(), true, false);
-            Thread.sleep(5000);
+    private HttpClientCache.Lease getHttpClient(ProxyPool.Entry proxy) {
+        Thread.currentThread().setName(proxy.toString());
+        log.debug("Выбран прокси: " + proxy + ", доступно прокси: " + proxyPool.available() + " из " + proxyPool.size());
+        return httpClientCache.lease(proxy);
+    }
+
+    /**
+     * Асинхронная загрузка. Для OKHTTP не занимает поток на время запроса,
+     * для APACHE блокирующий fetch выполняется в отдельном потоке.
+     * Одновременные запросы одной ссылки, в том числе через fetch, объединяются в один.
+     */
+    CompletableFuture<String> fetchAsync(String url, Map<String, String> headers) {
+        String key = getFlightKey(url, headers);
+        while (true) {
+            Flight flight = IN_FLIGHT.get(key);
+            if (flight == null) {
+                Flight created = new Flight();
+                flight = IN_FLIGHT.putIfAbsent(key, created);
+                if (flight == null) {
+                    flight = created;
+                    CompletableFuture<String> request = startFetchAsync(url, headers);
+                    request.whenComplete((page, t) -> {
+                        if (t != null) {
+                            created.future.completeExceptionally(t);
+                        } else {
+                            created.future.complete(page);
+                        }
+                    });
+                    created.future.whenComplete((page, t) -> {
+                        IN_FLIGHT.remove(key, created);
+                        if (created.future.isCancelled()) {
+                            request.cancel(true);
+                        }
+                    });
+                }
+            }
+            CompletableFuture<String> subscription = flight.subscribe();
+            if (!subscription.isCancelled()) {
+                return subscription;
+            }
+            // общий запрос только что отменили все ожидавшие, нужен новый
+            IN_FLIGHT.remove(key, flight);
         }
     }
 
-    private DefaultHttpClient getHttpClient() throws InterruptedException {
-        init();
-        currentProxy = proxyInfos.get(RandomUtils.nextInt(0, proxyInfos.size()));
-        Thread.currentThread().setName(currentProxy.toString());
-        log.debug("Выбран прокси: " + currentProxy + ", всего прокси: " + proxyInfos.size());
-        DefaultHttpClient httpClient = PoolingHttpClient.getHttpClient(currentProxy, true, Configuration.NETWORK_TIMEOUT);
-        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
-        return httpClient;
+    private CompletableFuture<String> startFetchAsync(String url, Map<String, String> headers) {
+        if (engine == Engine.OKHTTP) {
+            CompletableFuture<String> request = OkHttpFetcher.get().fetch(url, headers, isCache);
+            if (!request.isDone()) {
+                requests.add(request);
+                request.whenComplete((page, t) -> requests.remove(request));
+            }
+            return request;
+        }
+        // задача отдельно от CompletableFuture: его отмена не прерывает поток, отмена задачи прерывает
+        CompletableFuture<String> request = new CompletableFuture<>();
+        Future<?> task = BLOCKING_EXECUTOR.submit(() -> {
+            try {
+                request.complete(fetchBlocking(url, headers));
+            } catch (Throwable t) {
+                request.completeExceptionally(t);
+            }
+        });
+        request.whenComplete((page, t) -> {
+            if (request.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return request;
     }
 
     String fetch(String url, Map<String, String> headers) throws InterruptedException {
+        if (engine == Engine.OKHTTP) {
+            return await(fetchAsync(url, headers));
+        }
+        String key = getFlightKey(url, headers);
+        while (true) {
+            Flight created = new Flight();
+            Flight flight = IN_FLIGHT.putIfAbsent(key, created);
+            if (flight == null) {
+                // первый поток загружает сам, остальные ждут его ответа. Загружающий считается ожидающим,
+                // поэтому отмена всех остальных не отменяет общий запрос, пока он идёт
+                created.lead();
+                try {
+                    String page = fetchBlocking(url, headers);
+                    created.future.complete(page);
+                    return page;
+                } catch (Throwable t) {
+                    // и при Error: иначе ожидающие так и не дождутся ответа
+                    created.future.completeExceptionally(t);
+                    throw t;
+                } finally {
+                    IN_FLIGHT.remove(key, created);
+                }
+            }
+            log.debug("Ссылка уже загружается, ожидание общего ответа: " + url);
+            String page = awaitFlight(flight);
+            if (page != null) {
+                return page;
+            }
+            // тот запрос остановлен: убираем его, чтобы следующий круг начал новый, а не ждал его снова
+            IN_FLIGHT.remove(key, flight);
+        }
+    }
+
+    /**
+     * Ответ чужого запроса, null - тот запрос остановлен вместе со своим потоком, и загружать придётся заново.
+     */
+    private static String awaitFlight(Flight flight) throws InterruptedException {
+        CompletableFuture<String> subscription = flight.subscribe();
+        try {
+            return subscription.get();
+        } catch (InterruptedException e) {
+            subscription.cancel(true);
+            throw e;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InterruptedException || e.getCause() instanceof CancellationException) {
+                return null;
+            }
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static String getFlightKey(String url, Map<String, String> headers) {
+        return headers == null || headers.isEmpty() ? url : url + " " + new TreeMap<>(headers);
+    }
+
+    /**
+     * Обрывает запросы этого загрузчика, которые уже ждут ответа сайта: прерывание потока не останавливает
+     * чтение из сокета. Запросы других загрузчиков, например дерева разделов, продолжаются.
+     */
+    void cancelFetches() {
+        for (HttpClientCache.Lease lease : leases) {
+            httpClientCache.abort(lease);
+        }
+        for (CompletableFuture<String> request : requests) {
+            request.cancel(true);
+        }
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (CancellationException e) {
+            throw new InterruptedException("Запрос отменён");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) throws InterruptedException {
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private String fetchBlocking(String url, Map<String, String> headers) throws InterruptedException {
+        if (isCache) {
+            // страница из кеша не занимает ни прокси, ни разрешение лимитера
+            String page = pageCache.get(url, headers, CachePolicy.getMaxAge(url));
+            if (page != null) {
+                return page;
+            }
+        }
         String page = "";
         boolean inited = false;
         while (!inited) {
-            DefaultHttpClient httpClient = getHttpClient();
-            try {
+            ProxyPool.Entry proxy = proxyPool.acquire();
+            concurrencyLimiter.acquire();
+            ConcurrencyLimiter.Outcome outcome = ConcurrencyLimiter.Outcome.ERROR;
+            long start = System.currentTimeMillis();
+            try (HttpClientCache.Lease lease = getHttpClient(proxy)) {
                 log.debug("Обработка страницы: " + url);
-                page = Utils.getPageWithCache(httpClient, url, ENCODING, headers, ConfigurationUtils.getCurrentDirectory() + "cache/", isCache);
-                inited = isInit(page);
+                leases.add(lease);
+                try {
+                    page = Utils.getPageWithCache(lease.getHttpClient(), url, ENCODING, headers, FilePageCache.get().getDirectory(), false);
+                } finally {
+                    leases.remove(lease);
+                }
+                inited = !isCaptcha(page);
                 if (!inited) {
-                    proxyInfos.remove(currentProxy);
-                    Utils.removeCacheKey(url);
+                    outcome = ConcurrencyLimiter.Outcome.CAPTCHA;
+                    proxyPool.failure(proxy);
                     log.debug("IP заблокирован");
+                } else {
+                    outcome = ConcurrencyLimiter.Outcome.SUCCESS;
+                    proxyPool.success(proxy, System.currentTimeMillis() - start);
                 }
             } catch (InterruptedException e) {
                 throw e;
             } catch (Exception e) {
-                proxyInfos.remove(currentProxy);
+                if (Thread.currentThread().isInterrupted()) {
+                    // соединение оборвано отменой обработки, прокси не виноват
+                    throw new InterruptedException("Запрос отменён");
+                }
+                proxyPool.failure(proxy);
                 log.debug("Следующий прокси...");
+            } finally {
+                concurrencyLimiter.release(outcome, System.currentTimeMillis() - start);
             }
         }
+        if (isCache && CachePolicy.isStorable(url, page)) {
+            pageCache.put(url, headers, page);
+        }
         return page;
     }
 
-    private boolean isInit(String page) {
-        return !StringUtils.containsIgnoreCase(page, "Are you human?");
+    static boolean isCaptcha(String page) {
+        return StringUtils.containsIgnoreCase(page, "Are you human?");
+    }
+
+    /**
+     * Общий запрос. Каждый ожидающий получает свою копию результата: отмена копии не мешает остальным,
+     * а сам запрос отменяется, когда его отменили все ожидающие.
+     */
+    private static class Flight {
+
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final AtomicInteger subscribers = new AtomicInteger();
+
+        private void lead() {
+            subscribers.incrementAndGet();
+        }
+
+        private CompletableFuture<String> subscribe() {
+            subscribers.incrementAndGet();
+            CompletableFuture<String> subscription = future.copy();
+            subscription.whenComplete((page, t) -> {
+                if (subscription.isCancelled() && subscribers.decrementAndGet() == 0) {
+                    future.cancel(true);
+                }
+            });
+            return subscription;
+        }
     }
 
 }
@@ -4,14 +4,10 @@ import com.intellij.uiDesigner.core.GridConstraints;
 import com.intellij.uiDesigner.core.GridLayoutManager;
 import com.intellij.uiDesigner.core.Spacer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.jdesktop.swingx.JXTable;
 import org.jdesktop.swingx.prompt.PromptSupport;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import ru.misterparser.common.JSoupUtils;
 import ru.misterparser.common.MavenProperties;
 import ru.misterparser.common.Utils;
 import ru.misterparser.common.YandexUtils;
@@ -30,11 +26,13 @@ import ru.misterparser.common.model.Category;
 import ru.misterparser.common.sp.SpUtils;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.plaf.basic.BasicTableUI;
 import javax.swing.plaf.basic.BasicTreeUI;
-import javax.swing.table.TableRowSorter;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.*;
@@ -49,9 +47,7 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -65,6 +61,8 @@ public class MainFrame implements ConfigurationApplier {
 
     private static final String FRAME_TITLE = "Futbol24 Parser";
     private static final String LIST_DELIMITER = ",";
+    // период переноса найденных матчей в таблицу, мс
+    private static final int MATCH_DRAIN_DELAY = 100;
 
     private JFrame frame;
     private JPanel rootPanel;
@@ -81,6 +79,7 @@ public class MainFrame implements ConfigurationApplier {
     private JButton refreshCategoriesButton;
     private JTextField minutesTextField;
     private JButton loadMatchesButton;
+    private JButton resumeButton;
     private JLabel noInfoLabel;
     private JButton minuteHelpButton;
     private JRadioButton totalsRadioButton;
@@ -98,8 +97,10 @@ public class MainFrame implements ConfigurationApplier {
     private Thread parserThread;
     private boolean isStarted = false;
     private MatchTableModel matchTableModel = new MatchTableModel();
+    private MatchRowSorter matchRowSorter;
     private ErrorLogEventProcessor eventProcessor;
     private Map<List<String>, List<String>> noInfoUrls = new ConcurrentHashMap<>();
+    private final ConfigurationSaver configurationSaver = new ConfigurationSaver();
     private RadioButtonGroup<Configuration.MatchSummaryType> matchSummaryTypeRadioButtonGroup;
     private RadioButtonGroup<Configuration.SubtractType> min45SubtractTypeRadioButtonGroup;
     private RadioButtonGroup<Configuration.SubtractType> min90SubtractTypeRadioButtonGroup;
@@ -111,30 +112,46 @@ public class MainFrame implements ConfigurationApplier {
             if (isStarted) {
                 parserThread.interrupt();
             } else {
-                try {
-                    eventProcessor.reset();
-                    matchTableModel.clear();
-                    noInfoUrls.clear();
-                    updateCounter();
-                    MatchLoader matchLoader = new MatchLoader(MainFrame.this, categoriesTree, eventProcessor);
-                    parserThread = new Thread(matchLoader, "MatchLoader");
-                    parserThread.start();
-                    loadMatchesButton.setText("Стоп");
-                    isStarted = true;
-                } catch (Exception ex) {
-                    log.debug("Exception", ex);
-                    JOptionPane.showMessageDialog(frame, "Ошибка запуска потока\n" + ExceptionUtils.getStackTrace(ex), FRAME_TITLE, JOptionPane.ERROR_MESSAGE);
-                    resetButtonState();
-                }
+                startMatchLoader(() -> new MatchLoader(MainFrame.this, categoriesTree, eventProcessor));
             }
         }
     };
 
+    private ActionListener resumeButtonListener = e -> {
+        applyConfiguration(false);
+        if (!isStarted) {
+            startMatchLoader(() -> new MatchLoader(MainFrame.this, eventProcessor));
+        }
+    };
+
     private ActionListener uploadLogButtonListener = actionEvent -> new Thread(this::uploadLog).start();
 
     private ActionListener refreshCategoriesButtonListener = e -> {
-        Configuration.get().CATEGORIES = null;
-        initTree();
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) categoriesTree.getModel().getRoot();
+        if (root == null || root.getChildCount() == 0) {
+            Configuration.get().CATEGORIES = null;
+            initTree();
+            return;
+        }
+        // дерево уже есть: по умолчанию дополняется новыми сезонами без перестроения.
+        // Новые страны и лиги появляются только при перестроении дерева целиком
+        Object[] options = {"Новые сезоны", "Перестроить дерево", "Отмена"};
+        int option = JOptionPane.showOptionDialog(frame, "Добавить новые сезоны в загруженные лиги или перестроить дерево соревнований целиком?\n" +
+                        "При перестроении дерево загружается с сайта заново, раскрытые узлы будут свёрнуты",
+                FRAME_TITLE, JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (option == 1) {
+            Configuration.get().CATEGORIES = null;
+            initTree();
+            return;
+        }
+        if (option != 0) {
+            return;
+        }
+        refreshCategoriesButton.setEnabled(false);
+        CategoryTreeLoader.get().refresh((DefaultTreeModel) categoriesTree.getModel()).whenComplete((added, t) -> SwingUtilities.invokeLater(() -> {
+            refreshCategoriesButton.setEnabled(true);
+            log.debug("Добавлено сезонов: " + added);
+        }));
     };
 
     private ActionListener minuteHelpButtonListener = e -> JOptionPane.showMessageDialog(frame, "Укажите через запятую минуты так, как они указаны на сайте:\n21,38,90+\n45+ или 90+ обозначает все дополнительные минуты\nМожно указать диапазон минут:\n65-78,44\nАналогично задаются списки диапазонов тоталов и разностей", FRAME_TITLE, JOptionPane.INFORMATION_MESSAGE);
@@ -159,45 +176,84 @@ public class MainFrame implements ConfigurationApplier {
     private ActionListener clearCacheButtonListener = new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
-            try {
-                List<String> filenames = new ArrayList<>();
-                DefaultMutableTreeNode root = (DefaultMutableTreeNode) categoriesTree.getModel().getRoot();
-                Enumeration<TreeNode> enumeration = root.depthFirstEnumeration();
-                while (enumeration.hasMoreElements()) {
-                    DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) enumeration.nextElement();
-                    if (treeNode.isLeaf()) {
-                        Category category = (Category) treeNode.getUserObject();
-                        String cacheDirectory = ConfigurationUtils.getCurrentDirectory() + "cache/";
-                        if (Utils.isExistsCacheKey(category.getUrl(), null, cacheDirectory)) {
-                            String key = Utils.getCacheKeyByUrl(category.getUrl(), null);
-                            String filename = cacheDirectory + key;
-                            filenames.add(filename);
-                        }
-                    }
-                }
-                log.debug("Список файлов для удаления из кеша: " + filenames.size());
-                for (String filename : filenames) {
-                    try {
-                        FileUtils.forceDelete(new File(filename));
-                    } catch (Exception e) {
-                        log.debug("Exception", e);
-                    }
+            // дерево читается в потоке Swing, удаление и сжатие кеша пишут на диск и идут в отдельном потоке
+            List<String> urls = new ArrayList<>();
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode) categoriesTree.getModel().getRoot();
+            Enumeration<TreeNode> enumeration = root.depthFirstEnumeration();
+            while (enumeration.hasMoreElements()) {
+                DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) enumeration.nextElement();
+                // у незагруженного узла лист - заглушка, а не раздел
+                if (treeNode.isLeaf() && treeNode.getUserObject() instanceof Category) {
+                    urls.add(((Category) treeNode.getUserObject()).getUrl());
                 }
-            } catch (Exception e) {
-                log.debug("Exception", e);
             }
+            new Thread(() -> clearCache(urls), "ClearCache").start();
         }
     };
 
+    private void clearCache(List<String> urls) {
+        try {
+            PageCache pageCache = PageCache.get();
+            CategoryCheckpointStore checkpointStore = CategoryCheckpointStore.get();
+            int removed = 0;
+            for (String url : urls) {
+                if (pageCache.remove(url, null)) {
+                    removed++;
+                }
+                // иначе следующий обход остановит пагинацию на известных матчах и не перечитает раздел
+                if (checkpointStore != null) {
+                    checkpointStore.remove(url);
+                }
+            }
+            log.debug("Удалено страниц из кеша: " + removed);
+            pageCache.compact();
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
     private void uploadLog() {
         String appName = FRAME_TITLE.replace("Parser", "");
         appName = StringUtils.trim(appName);
         YandexUtils.uploadLog(appName, logTextArea.getText());
     }
 
+    private void startMatchLoader(Supplier<MatchLoader> matchLoaderSupplier) {
+        try {
+            eventProcessor.reset();
+            matchTableModel.clear();
+            noInfoUrls.clear();
+            updateCounter();
+            parserThread = new Thread(matchLoaderSupplier.get(), "MatchLoader");
+            parserThread.start();
+            loadMatchesButton.setText("Стоп");
+            resumeButton.setEnabled(false);
+            isStarted = true;
+        } catch (Exception ex) {
+            log.debug("Exception", ex);
+            JOptionPane.showMessageDialog(frame, "Ошибка запуска потока\n" + ExceptionUtils.getStackTrace(ex), FRAME_TITLE, JOptionPane.ERROR_MESSAGE);
+            resetButtonState();
+        }
+    }
+
     private void resetButtonState() {
         isStarted = false;
         loadMatchesButton.setText("Загрузить матчи");
+        updateResumeButton();
+    }
+
+    private void updateResumeButton() {
+        CrawlJournal crawlJournal = CrawlJournal.get();
+        resumeButton.setEnabled(crawlJournal != null && crawlJournal.hasPlan());
+    }
+
+    /**
+     * Матчи, найденные с прошлого вызова, добавляются в таблицу пачкой, и счётчик обновляется один раз.
+     */
+    private void drainMatches() {
+        if (matchTableModel.drain() > 0) {
+            updateCounter();
+        }
     }
 
     private void updateCounter() {
@@ -289,7 +345,7 @@ public class MainFrame implements ConfigurationApplier {
         matchSummaryTypePanel.setLayout(new GridLayoutManager(1, 1, new Insets(0, 0, 0, 0), -1, -1));
         panel6.add(matchSummaryTypePanel, new GridConstraints(0, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
         final JPanel panel7 = new JPanel();
-        panel7.setLayout(new GridLayoutManager(5, 1, new Insets(0, 0, 0, 0), -1, -1));
+        panel7.setLayout(new GridLayoutManager(6, 1, new Insets(0, 0, 0, 0), -1, -1));
         panel1.add(panel7, new GridConstraints(0, 0, 5, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
         categoriesScrollPane = new JScrollPane();
         panel7.add(categoriesScrollPane, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, new Dimension(200, -1), new Dimension(200, -1), null, 0, false));
@@ -311,9 +367,13 @@ public class MainFrame implements ConfigurationApplier {
         loadMatchesButton.setIcon(new ImageIcon(getClass().getResource("/arrow-right.png")));
         loadMatchesButton.setText("Загрузить матчи");
         panel7.add(loadMatchesButton, new GridConstraints(3, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, 1, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        resumeButton = new JButton();
+        resumeButton.setText("Продолжить");
+        resumeButton.setToolTipText("Продолжить прерванную загрузку матчей");
+        panel7.add(resumeButton, new GridConstraints(4, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, 1, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         clearCacheButton = new JButton();
         clearCacheButton.setText("Очистить кеш списков матчей");
-        panel7.add(clearCacheButton, new GridConstraints(4, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        panel7.add(clearCacheButton, new GridConstraints(5, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         final JPanel panel9 = new JPanel();
         panel9.setLayout(new GridLayoutManager(1, 1, new Insets(5, 5, 5, 5), -1, -1));
         tabbedPane.addTab("Лог", panel9);
@@ -355,22 +415,24 @@ public class MainFrame implements ConfigurationApplier {
         updateCounter();
     }
 
-    private class ErrorLogEventProcessor extends LogEventProcessor<Match> {
+    private class ErrorLogEventProcessor extends LogEventProcessor<MatchStore.Row> {
 
         ErrorLogEventProcessor(String tabTitle, String messageTitle, JTabbedPane tabbedPane) {
             super(tabTitle, messageTitle, tabbedPane);
         }
 
         @Override
-        public void find(Match match) {
-            log.debug("Найден матч: " + match);
-            matchTableModel.addItem(match);
-            updateCounter();
+        public void find(MatchStore.Row row) {
+            log.debug("Найден матч: " + row);
+            matchTableModel.offer(row);
         }
 
         @Override
         public void finish(ThreadFinishStatus threadFinishStatus, Throwable throwable) {
-            log.debug("Скачано матчей: " + matchTableModel.getMatches().size());
+            SwingUtilities.invokeLater(() -> {
+                drainMatches();
+                log.debug("Скачано матчей: " + matchTableModel.getMatches().size());
+            });
             resetButtonState();
             super.finish(threadFinishStatus, throwable);
         }
@@ -426,12 +488,15 @@ public class MainFrame implements ConfigurationApplier {
         uploadLogButton.addActionListener(uploadLogButtonListener);
         refreshCategoriesButton.addActionListener(refreshCategoriesButtonListener);
         loadMatchesButton.addActionListener(loadMatchesButtonListener);
+        resumeButton.addActionListener(resumeButtonListener);
+        updateResumeButton();
         minuteHelpButton.addActionListener(minuteHelpButtonListener);
         saveButton.addActionListener(saveButtonListener);
         clearCacheButton.addActionListener(clearCacheButtonListener);
 
         matchTableModel.setColumnIdentifiers();
         matchTable.setModel(matchTableModel);
+        new Timer(MATCH_DRAIN_DELAY, e -> drainMatches()).start();
         matchTable.setUI(new BasicTableUI());
         matchTable.addMouseListener(new BrowseItemMouseListener(matchTable));
         categoriesTree.setUI(new BasicTreeUI());
@@ -479,49 +544,78 @@ public class MainFrame implements ConfigurationApplier {
         min90SubtractTypeRadioButtonGroup.recreateRadiobuttons(RadioButtonGroup.Direction.HORIZONTAL);
 
         PromptSupport.setPrompt("Простой текстовый фильтр по матчам...", searchTextField);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> applyConfiguration(false)));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            applyConfiguration(false);
+            configurationSaver.flush();
+        }));
 
         ConfigurationUtils.restoreConfiguration(Configuration.get());
+        // дерево хранится отдельно от настроек
+        TreeModel categories = CategoryTreeStore.get().load();
+        if (categories == null && Configuration.get().CATEGORIES != null) {
+            categories = CategoryTreeStore.get().migrate(Configuration.get().CATEGORIES);
+        }
+        Configuration.get().CATEGORIES = categories;
         populateMainFrame();
 
         initTree();
+        CategoryTreeStore.get().watch(categoriesTree);
 
-        TableRowSorter<MatchTableModel> sorter = new TableRowSorter<>(matchTableModel);
-        matchTable.setRowSorter(sorter);
+        matchRowSorter = new MatchRowSorter(matchTableModel, () -> Configuration.get().SEARCH && StringUtils.isNotBlank(searchTextField.getText()) ? searchTextField.getText() : null);
+        matchTable.setRowSorter(matchRowSorter);
         List<RowSorter.SortKey> sortKeys = new ArrayList<>();
         sortKeys.add(new RowSorter.SortKey(0, SortOrder.DESCENDING));
-        sorter.setSortKeys(sortKeys);
-        sorter.setRowFilter(rowFilter);
+        matchRowSorter.setSortKeys(sortKeys);
+        // число показанных строк меняется, когда фильтр досчитан
+        matchRowSorter.addRowSorterListener(e -> updateCounter());
 
-        categoriesTree.addTreeSelectionListener(tse -> {
-            if (StringUtils.isNotBlank(Configuration.get().NUMBER_SEASONS)) {
-                try {
-                    TreePath treePath = tse.getPath();
-                    DefaultMutableTreeNode lastPathComponent = (DefaultMutableTreeNode) treePath.getLastPathComponent();
-                    Enumeration<TreeNode> children = lastPathComponent.children();
-                    List<Integer> numberSeasons = SpUtils.getSizeLine(Configuration.get().NUMBER_SEASONS, 1).stream().mapToInt(Integer::parseInt).boxed().collect(Collectors.toList());
-                    int i = 1;
-                    while (children.hasMoreElements()) {
-                        TreeNode child = children.nextElement();
-                        if (numberSeasons.contains(i) && !child.children().hasMoreElements()) {
-                            SwingUtilities.invokeLater(() -> {
-                                TreePath childTreePath = treePath.pathByAddingChild(child);
-                                categoriesTree.removeSelectionPath(treePath);
-                                categoriesTree.addSelectionPath(childTreePath);
-                            });
-                        }
-                        i++;
-                    }
+        categoriesTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
+                CategoryTreeLoader.get().open((DefaultTreeModel) categoriesTree.getModel(), treeNode);
+            }
 
-                } catch (Exception e) {
-                    log.debug("Exception", e);
-                }
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
             }
         });
 
+        categoriesTree.addTreeSelectionListener(tse -> {
+            TreePath treePath = tse.getPath();
+            DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) treePath.getLastPathComponent();
+            // сезоны лиги выбираются, когда лига загружена
+            CategoryTreeLoader.get().open((DefaultTreeModel) categoriesTree.getModel(), treeNode).thenRun(() -> selectSeasons(treePath));
+        });
+
         // эта строка всегда должна быть в конце, чтобы не было вызова applyConfiguration из populateMainFrame
     }
 
+    private void selectSeasons(TreePath treePath) {
+        if (StringUtils.isNotBlank(Configuration.get().NUMBER_SEASONS)) {
+            try {
+                DefaultMutableTreeNode lastPathComponent = (DefaultMutableTreeNode) treePath.getLastPathComponent();
+                Enumeration<TreeNode> children = lastPathComponent.children();
+                List<Integer> numberSeasons = SpUtils.getSizeLine(Configuration.get().NUMBER_SEASONS, 1).stream().mapToInt(Integer::parseInt).boxed().collect(Collectors.toList());
+                int i = 1;
+                while (children.hasMoreElements()) {
+                    TreeNode child = children.nextElement();
+                    if (numberSeasons.contains(i) && !child.children().hasMoreElements()) {
+                        SwingUtilities.invokeLater(() -> {
+                            TreePath childTreePath = treePath.pathByAddingChild(child);
+                            categoriesTree.removeSelectionPath(treePath);
+                            categoriesTree.addSelectionPath(childTreePath);
+                        });
+                    }
+                    i++;
+                }
+
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }
+    }
+
     private StateUpdater matchSummaryStateUpdater = new StateUpdater() {
         @Override
         public void update() {
@@ -543,146 +637,22 @@ public class MainFrame implements ConfigurationApplier {
     };
 
     private void refilter() {
-        matchTableModel.fireTableDataChanged();
-        updateCounter();
+        matchRowSorter.refilter();
     }
 
-    private RowFilter<MatchTableModel, Integer> rowFilter = new RowFilter<>() {
-        @Override
-        public boolean include(Entry<? extends MatchTableModel, ? extends Integer> entry) {
-            MatchTableModel tableModel = entry.getModel();
-            Match match = tableModel.getMatch(entry.getIdentifier());
-            {
-                if (!FilterUtils.checkMinuteFilter(match)) {
-                    return false;
-                }
-            }
-            {
-                if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.TOTAL) {
-                    boolean filter = Configuration.get().TOTALS.isEmpty();
-                    for (Match.Goal goal : match.getGoals()) {
-                        if (FilterUtils.checkGoalByMinutes(goal)) {
-                            for (String totalRange : Configuration.get().TOTALS) {
-                                if (FilterUtils.checkByTotal(goal, totalRange)) {
-                                    filter = true;
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    if (!filter) {
-                        return false;
-                    }
-                } else if (Configuration.get().GOAL_FILTER_TYPE == Configuration.GoalFilterType.SUBTRACT) {
-                    boolean filter = Configuration.get().SUBTRACTS.isEmpty();
-                    for (Match.Goal goal : match.getGoals()) {
-                        if (FilterUtils.checkGoalByMinutes(goal)) {
-                            for (String subtractRange : Configuration.get().SUBTRACTS) {
-                                if (FilterUtils.checkBySubtract(goal, subtractRange)) {
-                                    filter = true;
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    if (!filter) {
-                        return false;
-                    }
-                }
-            }
-            {
-                boolean searchFilter = !Configuration.get().SEARCH;
-                {
-                    int ei = entry.getIdentifier();
-                    for (int i = 0; i < tableModel.getColumnCount(); i++) {
-                        String s = String.valueOf(tableModel.getValueAt(ei, i));
-                        if (StringUtils.isBlank(searchTextField.getText()) || StringUtils.containsIgnoreCase(s, searchTextField.getText())) {
-                            searchFilter = true;
-                            break;
-                        }
-                    }
-                }
-                //noinspection RedundantIfStatement
-                if (!searchFilter) {
-                    return false;
-                }
-            }
-            return true;
-        }
-    };
-
     private void initTree() {
         TreeUtils.initTree(categoriesTree, Configuration.get().CATEGORIES, treeLoader, this/*, () -> categoriesTree.setSelectionInterval(0, categoriesTree.getRowCount() - 1)*/);
     }
 
     private TreeUtils.TreeLoader treeLoader = () -> {
-        DefaultMutableTreeNode rootTreeNode = new DefaultMutableTreeNode();
-        DefaultTreeModel defaultTreeModel = new DefaultTreeModel(rootTreeNode);
         try {
-            LeagueLoader leagueLoader = new LeagueLoader();
-            Document document = leagueLoader.getRootNode("https://www.futbol24.com/", false);
-            ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(64);
-            {
-                DefaultMutableTreeNode node = new DefaultMutableTreeNode(new Category("Интернациональные", null));
-                rootTreeNode.add(node);
-                for (Element a : document.select("div.international ul.countries > li > a")) {
-                    submitTask(executorService, node, a);
-                }
-            }
-            {
-                DefaultMutableTreeNode node = new DefaultMutableTreeNode(new Category("Национальные", null));
-                rootTreeNode.add(node);
-                for (Element a : document.select("div.national ul.countries > li > a")) {
-                    submitTask(executorService, node, a);
-                }
-            }
-            log.debug("Задач в очереди: " + executorService.getQueue().size());
-            executorService.shutdown();
-            executorService.awaitTermination(1000, TimeUnit.HOURS);
+            return CategoryTreeLoader.get().loadRoot();
         } catch (Exception e) {
             log.debug("Exception", e);
+            return new DefaultTreeModel(new DefaultMutableTreeNode());
         }
-        return defaultTreeModel;
     };
 
-    private void submitTask(ThreadPoolExecutor executorService, DefaultMutableTreeNode node, Element a) {
-        DefaultMutableTreeNode child = createNode(node, a);
-        executorService.execute(() -> {
-            try {
-                addLeague(child, a.parent().attr("data-id"));
-            } catch (Exception e) {
-                log.debug("Exception", e);
-            }
-        });
-    }
-
-    private synchronized DefaultMutableTreeNode createNode(DefaultMutableTreeNode node, Element a) {
-        String name = JSoupUtils.getText(a);
-        String url = Utils.normalizeUrl(a.attr("href"), "https://www.futbol24.com/");
-        Category category = new Category(name, url);
-        DefaultMutableTreeNode newChild = new DefaultMutableTreeNode(category);
-        node.add(newChild);
-        return newChild;
-    }
-
-    private void addLeague(DefaultMutableTreeNode treeNode, String dataId) throws InterruptedException {
-        Document document = new LeagueLoader().getRootNode("https://www.futbol24.com/ml/subLeagues/?CountryId=" + dataId, true);
-        List<Element> as = document.select("ul > li > a");
-        for (Element a : as) {
-            DefaultMutableTreeNode node = createNode(treeNode, a);
-            String leagueUrl = ((Category) node.getUserObject()).getUrl();
-            Document leagueDoc = new LeagueLoader().getRootNode(leagueUrl, false);
-            List<Element> options = leagueDoc.select("div.desc select.gray2.onchangeurl option");
-            for (Element option : options) {
-                String name = JSoupUtils.getText(option);
-                String url = Utils.normalizeUrl(option.attr("value") + "results/", "https://www.futbol24.com/");
-                Category category = new Category(name, url);
-                DefaultMutableTreeNode newChild = new DefaultMutableTreeNode(category);
-                node.add(newChild);
-            }
-        }
-    }
-
     public void applyConfiguration(boolean verbose) {
         try {
             Configuration.get().CATEGORIES = categoriesTree.getModel();
@@ -697,7 +667,7 @@ public class MainFrame implements ConfigurationApplier {
             Configuration.get().MIN_45 = min45SubtractTypeRadioButtonGroup.getSelected();
             Configuration.get().MIN_90 = min90SubtractTypeRadioButtonGroup.getSelected();
             log.debug("Настройки установлены");
-            ConfigurationUtils.saveConfiguration(Configuration.get());
+            configurationSaver.save(Configuration.get().CATEGORIES);
             if (verbose) {
                 JOptionPane.showMessageDialog(frame, "Настройки установлены", FRAME_TITLE, JOptionPane.INFORMATION_MESSAGE);
             }
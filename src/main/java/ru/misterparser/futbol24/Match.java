@@ -1,9 +1,7 @@
 package ru.misterparser.futbol24;
 
 import lombok.Data;
-import lombok.Getter;
 import lombok.NonNull;
-import lombok.ToString;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.time.LocalDateTime;
@@ -12,57 +10,113 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-@ToString
+/**
+ * Матч - представление строки MatchStore, сами данные лежат в столбцах хранилища.
+ * Два представления одной строки равны.
+ */
 class Match {
 
-    @Getter
-    private final LocalDateTime date;
+    private final MatchStore store;
+    private final int index;
 
-    @Getter
-    private final String homeTeam;
+    Match(MatchStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    LocalDateTime getDate() {
+        return store.getDate(index);
+    }
 
-    @Getter
-    private final String guestTeam;
+    String getHomeTeam() {
+        return store.getHomeTeam(index);
+    }
+
+    String getGuestTeam() {
+        return store.getGuestTeam(index);
+    }
 
-    @Getter
-    private final List<String> categories;
+    List<String> getCategories() {
+        return store.getCategories(index);
+    }
 
-    @Getter
-    private final int categoriesOrder;
+    int getCategoriesOrder() {
+        return store.getCategoriesOrder(index);
+    }
 
-    private final List<Goal> goals = new ArrayList<>();
+    Pair<Integer, Integer> getScoreHt() {
+        return MatchStore.unpackScore(store.getScoreHt(index));
+    }
 
-    @Getter
-    private final Pair<Integer, Integer> scoreHt;
+    Pair<Integer, Integer> getScoreFt() {
+        return MatchStore.unpackScore(store.getScoreFt(index));
+    }
 
-    @Getter
-    private final Pair<Integer, Integer> scoreFt;
+    String getUrl() {
+        return store.getUrl(index);
+    }
 
-    @Getter
-    private final String url;
+    int getGoalCount() {
+        return store.getGoalEnd(index) - store.getGoalStart(index);
+    }
 
-    Match(LocalDateTime date, String homeTeam, String guestTeam, List<String> categories, int categoriesOrder, Pair<Integer, Integer> scoreHt, Pair<Integer, Integer> scoreFt, String url) {
-        this.date = date;
-        this.homeTeam = homeTeam;
-        this.guestTeam = guestTeam;
-        this.categories = List.copyOf(categories);
-        this.categoriesOrder = categoriesOrder;
-        this.scoreHt = scoreHt;
-        this.scoreFt = scoreFt;
-        this.url = url;
+    /**
+     * Код минуты гола с номером goal, см. MatchStore.getGoalMinuteCode.
+     */
+    int getGoalMinuteCode(int goal) {
+        return store.getGoalMinuteCode(store.getGoalStart(index) + goal);
     }
 
-    void addGoal(Goal goal) {
-        goals.add(goal);
+    String getGoalMinute(int goal) {
+        return store.getGoalMinute(store.getGoalStart(index) + goal);
     }
 
+    /**
+     * Упакованный счёт перед голом, см. MatchStore.getLeft и getRight.
+     */
+    int getGoalScoreBefore(int goal) {
+        return store.getGoalScoreBefore(store.getGoalStart(index) + goal);
+    }
+
+    /**
+     * Голы матча отдельными объектами, для мест, где важна не скорость, а удобство.
+     */
     List<Goal> getGoals() {
+        int start = store.getGoalStart(index);
+        int end = store.getGoalEnd(index);
+        List<Goal> goals = new ArrayList<>(end - start);
+        for (int g = start; g < end; g++) {
+            goals.add(new Goal(store.getGoalType(g), store.getGoalMinute(g), MatchStore.unpackScore(store.getGoalScoreBefore(g)),
+                    store.getGoalTeam(g), store.getGoalPlayer(g)));
+        }
         return Collections.unmodifiableList(goals);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Match)) {
+            return false;
+        }
+        Match match = (Match) o;
+        return store == match.store && index == match.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(store) * 31 + index;
+    }
+
+    @Override
+    public String toString() {
+        return "Match(date=" + getDate() + ", homeTeam=" + getHomeTeam() + ", guestTeam=" + getGuestTeam()
+                + ", categories=" + getCategories() + ", categoriesOrder=" + getCategoriesOrder() + ", goals=" + getGoals()
+                + ", scoreHt=" + getScoreHt() + ", scoreFt=" + getScoreFt() + ", url=" + getUrl() + ")";
+    }
+
     @Data
     static class Goal {
         @NonNull
@@ -80,7 +134,6 @@ class Match {
             PENALTY_HOT(5),
             UNBEATEN_PENALTY(6);
 
-            private static final Pattern PATTERN = Pattern.compile("[gh]action([1-6])");
             private static final Map<Integer, Type> CODE_TO_TYPE = new LinkedHashMap<>();
 
             private int type;
@@ -89,14 +142,19 @@ class Match {
                 this.type = type;
             }
 
+            /**
+             * Код события из css-класса строки вида "haction1" или "gaction4".
+             */
             static Type fromCss(String style) {
-                Type type = null;
-                Matcher matcher = PATTERN.matcher(style);
-                if (matcher.find()) {
-                    int c = Integer.parseInt(matcher.group(1));
-                    type = CODE_TO_TYPE.get(c);
+                int i = style.indexOf("action");
+                while (i >= 0) {
+                    int c = i + 6 < style.length() ? style.charAt(i + 6) - '0' : -1;
+                    if (i > 0 && (style.charAt(i - 1) == 'g' || style.charAt(i - 1) == 'h') && c >= 1 && c <= 6) {
+                        return CODE_TO_TYPE.get(c);
+                    }
+                    i = style.indexOf("action", i + 1);
                 }
-                return type;
+                return null;
             }
 
             static {
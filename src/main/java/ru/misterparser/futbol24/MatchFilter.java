@@ -0,0 +1,210 @@
+package ru.misterparser.futbol24;
+
+import org.apache.commons.lang3.StringUtils;
+import ru.misterparser.common.Utils;
+import ru.misterparser.common.sp.SpUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Фильтр матчей по минутам голов и диапазонам тоталов или разностей, собранный из настроек один раз.
+ * <p>
+ * Строки настроек разбираются при сборке: диапазоны минут раскрываются в множества, а проверка тотала
+ * или разности заранее вычисляется для небольших значений в таблицу. Для каждого встреченного кода
+ * минуты гола (см. MatchStore) запоминается, каким минутам из настроек он подходит. Фильтр пересобирается,
+ * только когда меняется содержимое настроек, а не на каждое applyConfiguration, и общий для таблицы и выгрузки.
+ */
+class MatchFilter {
+
+    private static final int TABLE_SIZE = 64;
+    private static final int MINUTE_CODES = 1 << 16;
+    private static final BitSet NO_MINUTES = new BitSet();
+
+    private static volatile MatchFilter matchFilter;
+
+    private final List<String> minutes;
+    private final List<String> ranges;
+    private final List<String> totals;
+    private final List<String> subtracts;
+    private final Configuration.GoalFilterType goalFilterType;
+
+    /**
+     * Раскрытые диапазоны минут вида 65-78, null для остальных записей.
+     */
+    private final Set<String>[] rangeMinutes;
+    private final AtomicReferenceArray<BitSet> minuteMasksByCode = new AtomicReferenceArray<>(MINUTE_CODES);
+    private final Map<String, BitSet> minuteMasks = new ConcurrentHashMap<>();
+    private final boolean[][] rangeTable;
+    private final boolean[] anyRangeTable;
+
+    @SuppressWarnings("unchecked")
+    private MatchFilter(List<String> minutes, List<String> totals, List<String> subtracts, Configuration.GoalFilterType goalFilterType) {
+        // копии: настройки сравниваются с ними по содержимому
+        this.minutes = copy(minutes);
+        this.totals = copy(totals);
+        this.subtracts = copy(subtracts);
+        this.goalFilterType = goalFilterType;
+        this.ranges = goalFilterType == Configuration.GoalFilterType.TOTAL ? this.totals :
+                goalFilterType == Configuration.GoalFilterType.SUBTRACT ? this.subtracts : Collections.emptyList();
+        rangeMinutes = new Set[this.minutes.size()];
+        for (int i = 0; i < this.minutes.size(); i++) {
+            if (this.minutes.get(i).matches("[0-9]+-[0-9]+")) {
+                rangeMinutes[i] = new HashSet<>(SpUtils.getSizeLine(this.minutes.get(i), 1));
+            }
+        }
+        rangeTable = new boolean[ranges.size()][TABLE_SIZE];
+        anyRangeTable = new boolean[TABLE_SIZE];
+        for (int r = 0; r < ranges.size(); r++) {
+            for (int value = 0; value < TABLE_SIZE; value++) {
+                rangeTable[r][value] = checkInRange(value, ranges.get(r));
+                anyRangeTable[value] |= rangeTable[r][value];
+            }
+        }
+    }
+
+    /**
+     * Фильтр для текущих настроек.
+     */
+    static MatchFilter get() {
+        Configuration configuration = Configuration.get();
+        MatchFilter filter = matchFilter;
+        List<String> minutes = nonNull(configuration.MINUTES);
+        List<String> totals = nonNull(configuration.TOTALS);
+        List<String> subtracts = nonNull(configuration.SUBTRACTS);
+        if (filter == null || !filter.minutes.equals(minutes) || !filter.totals.equals(totals)
+                || !filter.subtracts.equals(subtracts) || !Objects.equals(filter.goalFilterType, configuration.GOAL_FILTER_TYPE)) {
+            filter = new MatchFilter(minutes, totals, subtracts, configuration.GOAL_FILTER_TYPE);
+            matchFilter = filter;
+        }
+        return filter;
+    }
+
+    private static List<String> nonNull(List<String> list) {
+        return list != null ? list : Collections.emptyList();
+    }
+
+    private static List<String> copy(List<String> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    /**
+     * Матч проходит, если есть гол на одной из минут и, при фильтре по голам, на этой минуте тотал
+     * или разность попадает в один из диапазонов.
+     */
+    boolean include(Match match) {
+        boolean minuteFilter = minutes.isEmpty();
+        boolean goalFilter = goalFilterType == null || ranges.isEmpty();
+        for (int goal = 0; goal < match.getGoalCount(); goal++) {
+            if (isMinute(match, goal)) {
+                minuteFilter = true;
+                if (!goalFilter && isInAnyRange(getValue(match, goal))) {
+                    goalFilter = true;
+                }
+                if (goalFilter) {
+                    break;
+                }
+            }
+        }
+        return minuteFilter && goalFilter;
+    }
+
+    /**
+     * Гол матча с номером goal на одной из минут настроек.
+     */
+    boolean isMinute(Match match, int goal) {
+        return !getMinuteMask(match, goal).isEmpty();
+    }
+
+    /**
+     * Гол матча с номером goal на минуте с номером minuteIndex в настройках.
+     */
+    boolean isMinute(Match match, int goal, int minuteIndex) {
+        return getMinuteMask(match, goal).get(minuteIndex);
+    }
+
+    /**
+     * Значение в диапазоне с номером rangeIndex из тоталов или разностей, смотря по типу фильтра.
+     */
+    boolean isInRange(int rangeIndex, int value) {
+        if (value >= 0 && value < TABLE_SIZE) {
+            return rangeTable[rangeIndex][value];
+        }
+        return checkInRange(value, ranges.get(rangeIndex));
+    }
+
+    private boolean isInAnyRange(int value) {
+        if (value >= 0 && value < TABLE_SIZE) {
+            return anyRangeTable[value];
+        }
+        for (String range : ranges) {
+            if (checkInRange(value, range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Тотал или разность счёта перед голом, смотря по типу фильтра.
+     */
+    int getValue(Match match, int goal) {
+        int score = match.getGoalScoreBefore(goal);
+        int left = MatchStore.getLeft(score);
+        int right = MatchStore.getRight(score);
+        return goalFilterType == Configuration.GoalFilterType.SUBTRACT ? Math.abs(left - right) : left + right;
+    }
+
+    /**
+     * Номера минут настроек, которым подходит гол матча. Множество общее, менять его нельзя.
+     */
+    BitSet getMinuteMask(Match match, int goal) {
+        int code = match.getGoalMinuteCode(goal);
+        if (code >= 0 && code < MINUTE_CODES) {
+            BitSet mask = minuteMasksByCode.get(code);
+            if (mask == null) {
+                mask = calcMinuteMask(match.getGoalMinute(goal));
+                minuteMasksByCode.set(code, mask);
+            }
+            return mask;
+        }
+        String goalMinute = match.getGoalMinute(goal);
+        if (goalMinute == null) {
+            return NO_MINUTES;
+        }
+        return minuteMasks.computeIfAbsent(goalMinute, this::calcMinuteMask);
+    }
+
+    private BitSet calcMinuteMask(String goalMinute) {
+        BitSet mask = new BitSet(minutes.size());
+        for (int i = 0; i < minutes.size(); i++) {
+            String minute = minutes.get(i);
+            boolean matches;
+            if (rangeMinutes[i] != null) {
+                matches = rangeMinutes[i].contains(goalMinute);
+            } else if (StringUtils.containsIgnoreCase(minute, "+")) {
+                matches = StringUtils.startsWithIgnoreCase(goalMinute, minute);
+            } else {
+                matches = StringUtils.equalsIgnoreCase(goalMinute, minute);
+            }
+            mask.set(i, matches);
+        }
+        return mask;
+    }
+
+    private static boolean checkInRange(int value, String range) {
+        try {
+            return Utils.checkInRange(value + "", range, false);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -1,15 +1,14 @@
 package ru.misterparser.futbol24;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import ru.misterparser.common.JSoupUtils;
 import ru.misterparser.common.Utils;
-import ru.misterparser.common.configuration.ConfigurationUtils;
 import ru.misterparser.common.flow.EventProcessor;
 import ru.misterparser.common.flow.ThreadFinishStatus;
 import ru.misterparser.common.gui.tree.TreeUtils;
@@ -17,19 +16,23 @@ import ru.misterparser.common.model.Category;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created with IntelliJ IDEA.
@@ -40,85 +43,123 @@ import java.util.regex.Pattern;
 @Slf4j
 public class MatchLoader extends Loader {
 
-    private static final Pattern SCORE_PATTERN = Pattern.compile("([0-9]+)\\s*-\\s*([0-9]+)");
-
     private MainFrame mainFrame;
     private JTree tree;
-    private EventProcessor<Match> eventProcessor;
-
-    private ThreadLocal<List<String>> currentCategories = new ThreadLocal<>();
-    private ThreadLocal<Integer> categoriesOrder = new ThreadLocal<>();
+    private EventProcessor<MatchStore.Row> eventProcessor;
 
-    @SuppressWarnings("FieldCanBeLocal")
-    private Properties parserProperties = new Properties();
+    private ExecutorService parseExecutor;
+    private final MatchRecordStore matchRecordStore = isCache ? MatchRecordStore.get() : null;
+    // без сохранённых результатов разбора известные матчи нечем восстановить, обход тогда полный
+    private final CategoryCheckpointStore checkpointStore = matchRecordStore != null && ParserProperties.get().getBoolean("isIncremental", true) ? CategoryCheckpointStore.get() : null;
+    private final CrawlJournal journal = CrawlJournal.get();
+    private boolean resume;
+    // при продолжении - матчи, уже восстановленные из журнала
+    private final Set<String> journaled = ConcurrentHashMap.newKeySet();
+    // сколько страниц результатов запрашивается вперёд, 1 - по одной странице
+    private final int paginationWindow = Math.max(1, ParserProperties.get().getInt("paginationWindow", 4));
 
     private MatchLoader() {
-        try {
-            parserProperties.load(new FileInputStream(ConfigurationUtils.getCurrentDirectory() + "parser.properties"));
-        } catch (FileNotFoundException ignored) {
-        } catch (Exception e) {
-            log.debug("Exception", e);
-        }
-        isCache = Boolean.parseBoolean(parserProperties.getProperty("isCache", "false"));
         Utils.setTryCount(1);
         Utils.setTimeoutIOError(2000);
     }
 
-    MatchLoader(MainFrame mainFrame, JTree tree, EventProcessor<Match> eventProcessor) {
+    MatchLoader(MainFrame mainFrame, JTree tree, EventProcessor<MatchStore.Row> eventProcessor) {
         this();
         this.mainFrame = mainFrame;
         this.tree = tree;
         this.eventProcessor = eventProcessor;
     }
 
+    /**
+     * Продолжение прерванного обхода по журналу: разделы берутся из журнала, а не из выделения в дереве.
+     */
+    MatchLoader(MainFrame mainFrame, EventProcessor<MatchStore.Row> eventProcessor) {
+        this();
+        this.mainFrame = mainFrame;
+        this.eventProcessor = eventProcessor;
+        this.resume = true;
+    }
+
     @Override
     public void run() {
         ThreadFinishStatus threadFinishStatus = ThreadFinishStatus.ERROR;
         Throwable throwable = null;
-        ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(8);
+        // один планировщик на весь обход: страницы результатов и страницы матчей всех разделов лежат в общих очередях,
+        // свободный поток забирает любую задачу, число потоков - общий предел одновременно выполняемых задач
+        ForkJoinPool scheduler = new ForkJoinPool(ConcurrencyLimiter.get().getMaxLimit(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        CrawlScope rootScope = new CrawlScope(scheduler);
+        parseExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         try {
+            log.debug("Движок загрузки: " + engine);
             log.debug("Конфигурация: " + Configuration.get().toString());
             List<Pair<String, List<String>>> categories = new ArrayList<>();
-            {
+            if (resume) {
+                categories.addAll(resumeFromJournal());
+            } else {
                 int[] treeRows = tree.getSelectionRows();
                 //noinspection ConstantConditions
                 Arrays.sort(treeRows);
                 for (int treeRow : treeRows) {
                     TreePath treePath = tree.getPathForRow(treeRow);
                     DefaultMutableTreeNode lastPathComponent = (DefaultMutableTreeNode) treePath.getLastPathComponent();
+                    // выбранная страна или лига могла ещё не загрузиться. Остановка обхода отменяет ожидание
+                    CompletableFuture<Void> subtree = CategoryTreeLoader.get().loadSubtree((DefaultTreeModel) tree.getModel(), lastPathComponent);
+                    rootScope.track(subtree);
+                    try {
+                        await(subtree);
+                    } catch (RuntimeException e) {
+                        eventProcessor.log("Не удалось загрузить раздел " + lastPathComponent + ", он пропущен");
+                        log.debug("Exception", e);
+                        continue;
+                    }
                     categories.addAll(processTreeNode(lastPathComponent));
                 }
                 log.debug("К обработке разделов: " + categories.size());
+                if (journal != null) {
+                    journal.start(categories);
+                }
             }
             {
-                categoriesOrder.set(0);
+                int categoriesOrder = 0;
                 for (Pair<String, List<String>> category : categories) {
-                    categoriesOrder.set(categoriesOrder.get() + 1);
-                    int co = categoriesOrder.get();
-                    executorService.execute(() -> {
-                        try {
-                            currentCategories.set(category.getRight());
-                            categoriesOrder.set(co); // перекладываем из потока обработки сезона в поток обработки матча
-                            log.debug("Категория: " + currentCategories.get());
-                            processCategory(category.getLeft());
-                        } catch (Exception e) {
-                            log.debug("Exception", e);
-                        }
+                    String categoryUrl = category.getLeft();
+                    ++categoriesOrder;
+                    CategoryCheckpointStore.Checkpoint checkpoint = checkpointStore != null ? checkpointStore.get(categoryUrl) : null;
+                    CrawlContext context = new CrawlContext(category.getRight(), categoriesOrder,
+                            checkpoint != null ? checkpoint.getMatchUrls() : Collections.emptySet(),
+                            ConcurrentHashMap.newKeySet(), new AtomicBoolean());
+                    if (resume && journal.isCategoryDone(categoryUrl)) {
+                        // известные матчи не журналируются: завершённый раздел восстанавливается из контрольной точки
+                        rootScope.fork(scope -> replayKnownMatches(scope, context));
+                        continue;
+                    }
+                    CompletableFuture<Void> completion = rootScope.fork(scope -> {
+                        log.debug("Категория: " + context.getCategories() + ", известных матчей: " + context.getKnown().size());
+                        replayKnownMatches(scope, context);
+                        processResultsPage(scope, categoryUrl, categoryUrl, context);
                     });
+                    rootScope.track(completion.thenRun(() -> finishCategory(rootScope, categoryUrl, context)));
                 }
-                log.debug("Задач в очереди: " + executorService.getQueue().size());
-                executorService.shutdown();
-                executorService.awaitTermination(1000, TimeUnit.HOURS);
+                rootScope.join();
+            }
+            if (journal != null && categories.stream().allMatch(category -> journal.isCategoryDone(category.getLeft()))) {
+                // обход завершён полностью, продолжать нечего
+                journal.clear();
             }
+            log.debug("Лимит одновременных запросов на момент завершения: " + ConcurrencyLimiter.get().getLimit());
             threadFinishStatus = ThreadFinishStatus.COMPLETED;
         } catch (InterruptedException e) {
             log.debug("Остановка потока");
-            executorService.shutdownNow();
+            rootScope.cancel();
+            cancelFetches();
             threadFinishStatus = ThreadFinishStatus.INTERRUPTED;
         } catch (Throwable t) {
             log.debug("Throwable", t);
+            rootScope.cancel();
             throwable = t;
         } finally {
+            scheduler.shutdownNow();
+            parseExecutor.shutdownNow();
             log.debug("Обработка завершена");
             eventProcessor.finish(threadFinishStatus, throwable);
         }
@@ -140,17 +181,113 @@ public class MatchLoader extends Loader {
         return categories;
     }
 
-    private void processCategory(String url) throws InterruptedException {
-        String page = fetch(url, null);
-        Document document = Jsoup.parse(page);
-        processPage(document);
-        String nextPage = getNextPage(document, url);
-        while (nextPage != null) {
-            page = fetch(nextPage, null);
-            document = Jsoup.parse(page);
-            processPage(document);
-            nextPage = getNextPage(document, url);
+    /**
+     * Следующая страница ставится в очередь раньше матчей текущей, чтобы длинный раздел не ждал своих матчей.
+     * Страницы идут от новых матчей к старым, поэтому на странице с уже известным матчем пагинация заканчивается.
+     */
+    private void processResultsPage(CrawlScope scope, String url, String categoryUrl, CrawlContext context) throws InterruptedException {
+        try {
+            CrawlJournal.Page page = getResultsPage(url, null, categoryUrl, context);
+            String nextPage = page.getNextPage();
+            if (nextPage != null) {
+                Pagination pagination = url.equals(categoryUrl) && paginationWindow > 1 ? Pagination.of(nextPage) : null;
+                if (pagination != null) {
+                    for (int i = 1; i <= paginationWindow; i++) {
+                        requestResultsPage(scope, pagination, i);
+                    }
+                    acceptResultsPageWhenReady(scope, pagination, 1, categoryUrl, context);
+                } else {
+                    scope.fork(s -> processResultsPage(s, nextPage, categoryUrl, context));
+                }
+            }
+            processPage(scope, page, context);
+        } catch (InterruptedException | RuntimeException e) {
+            context.getFailed().set(true);
+            throw e;
+        }
+    }
+
+    private void requestResultsPage(CrawlScope scope, Pagination pagination, int index) throws InterruptedException {
+        CompletableFuture<String> request = pagination.request(index, url ->
+                journal != null && journal.getPage(url) != null ? CompletableFuture.completedFuture(null) : fetchAsync(url, null));
+        if (request != null) {
+            scope.track(request);
+        }
+    }
+
+    /**
+     * Страница принимается после предыдущей, когда придёт её ответ. Разбор идёт на parseExecutor, поток планировщика не ждёт.
+     */
+    private void acceptResultsPageWhenReady(CrawlScope scope, Pagination pagination, int index, String categoryUrl, CrawlContext context) throws InterruptedException {
+        String url = pagination.getUrl(index);
+        scope.track(pagination.getRequest(index).handleAsync((html, t) -> {
+            try {
+                Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+                if (cause != null) {
+                    throw cause;
+                }
+                acceptResultsPage(scope, pagination, index, html, categoryUrl, context);
+            } catch (InterruptedException | CancellationException e) {
+                context.getFailed().set(true);
+                log.debug("Остановка потока обработки категории...");
+            } catch (Throwable e) {
+                context.getFailed().set(true);
+                eventProcessor.log("Ошибка '" + Utils.squeezeText(e.getMessage()) + "' во время обработки ссылки " + url);
+                log.debug("Throwable", e);
+            }
+            return null;
+        }, parseExecutor));
+    }
+
+    private void acceptResultsPage(CrawlScope scope, Pagination pagination, int index, String html, String categoryUrl, CrawlContext context) throws InterruptedException {
+        CrawlJournal.Page page = getResultsPage(pagination.getUrl(index), html, categoryUrl, context);
+        String nextPage = page.getNextPage();
+        if (nextPage == null) {
+            // statLR-Page=0 или известные матчи: запросы за этой страницей лишние
+            pagination.finish(index);
+        } else if (!nextPage.equals(pagination.getUrl(index + 1))) {
+            log.debug("Ссылка на следующую страницу не совпала с расчётной, дальше по одной: " + nextPage);
+            pagination.finish(index);
+            scope.fork(s -> processResultsPage(s, nextPage, categoryUrl, context));
+        } else {
+            requestResultsPage(scope, pagination, index + paginationWindow);
+            acceptResultsPageWhenReady(scope, pagination, index + 1, categoryUrl, context);
+        }
+        processPage(scope, page, context);
+    }
+
+    /**
+     * Страница результатов из журнала, если она уже разобрана в этом обходе, иначе разбор ответа html (null - загрузить).
+     */
+    private CrawlJournal.Page getResultsPage(String url, String html, String categoryUrl, CrawlContext context) throws InterruptedException {
+        CrawlJournal.Page page = journal != null ? journal.getPage(url) : null;
+        if (page == null) {
+            page = parseResultsPage(url, html != null ? html : fetch(url, null), categoryUrl, context);
+            if (journal != null) {
+                journal.page(url, page);
+            }
+        }
+        return page;
+    }
+
+    private CrawlJournal.Page parseResultsPage(String url, String html, String categoryUrl, CrawlContext context) {
+        Document document = Jsoup.parse(html);
+        List<String> itemUrls = new ArrayList<>();
+        Set<String> postponedUrls = new HashSet<>();
+        for (Element a : document.select("table.stat2.stat > tbody > tr a.matchAction")) {
+            String itemUrl = Utils.normalizeUrl(a.attr("href"), "https://www.futbol24.com/");
+            itemUrls.add(itemUrl);
+            if (StringUtils.containsIgnoreCase(JSoupUtils.getText(a), "P-P")) {
+                postponedUrls.add(itemUrl);
+            }
+        }
+        String nextPage = null;
+        if (itemUrls.stream().anyMatch(context.getKnown()::contains)) {
+            log.debug("Дальше известные матчи, пагинация остановлена: " + url);
+        } else {
+            nextPage = getNextPage(document, categoryUrl);
         }
+        return new CrawlJournal.Page(itemUrls, postponedUrls, nextPage);
     }
 
     private String getNextPage(Document document, String baseUrl) {
@@ -164,164 +301,159 @@ public class MatchLoader extends Loader {
         return null;
     }
 
-    private void processPage(Document document) throws InterruptedException {
-        ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(8);
-        try {
-            List<Element> as = document.select("table.stat2.stat > tbody > tr a.matchAction");
-            for (Element a : as) {
-                List<String> cats = currentCategories.get();
-                int co = categoriesOrder.get();
-                executorService.execute(() -> {
-                    currentCategories.set(cats); // перекладываем из потока обработки сезона в поток обработки матча
-                    categoriesOrder.set(co);
-                    String itemUrl = Utils.normalizeUrl(a.attr("href"), "https://www.futbol24.com/");
-                    String matchAction = JSoupUtils.getText(a);
-                    if (StringUtils.containsIgnoreCase(matchAction, "P-P")) {
-                        log.debug("Матч пересён: " + itemUrl);
-                        mainFrame.updateNoInfoUrls(cats, itemUrl);
+    /**
+     * Матчи страницы становятся подзадачами раздела: раздел завершится, когда будут обработаны все его матчи.
+     */
+    private void processPage(CrawlScope scope, CrawlJournal.Page resultsPage, CrawlContext context) throws InterruptedException {
+        for (String itemUrl : resultsPage.getItemUrls()) {
+            if (context.getKnown().contains(itemUrl) || journaled.contains(itemUrl)) {
+                // восстановлен из контрольной точки в начале обхода раздела или из журнала
+                continue;
+            }
+            if (resultsPage.getPostponedUrls().contains(itemUrl)) {
+                log.debug("Матч пересён: " + itemUrl);
+                processResult(itemUrl, MatchPageExtractor.Result.noInfo(null), context);
+                continue;
+            }
+            MatchPageExtractor.Result record = matchRecordStore != null ? matchRecordStore.get(itemUrl) : null;
+            if (record != null) {
+                // матч уже разобран в прошлых запусках, страница не нужна
+                context.getFound().add(itemUrl);
+                processResult(itemUrl, record, context);
+            } else if (engine == Engine.OKHTTP) {
+                // запрос не занимает поток, разбор ответа идёт на небольшом пуле parseExecutor
+                CompletableFuture<String> fetch = fetchAsync(itemUrl, null);
+                scope.track(fetch);
+                // ошибка загрузки тоже должна отметить раздел, иначе контрольная точка сохранится без этого матча
+                scope.track(fetch.handleAsync((page, t) -> {
+                    if (t != null) {
+                        processMatchFailure(itemUrl, t instanceof CompletionException ? t.getCause() : t, context);
                     } else {
-                        try {
-                            processMatch(itemUrl);
-                        } catch (InterruptedException e) {
-                            log.debug("Остановка потока обработки категории...");
-                        } catch (Throwable t) {
-                            eventProcessor.log("Ошибка '" + Utils.squeezeText(t.getMessage()) + "' во время обработки ссылки " + itemUrl);
-                            log.debug("Throwable", t);
-                        }
+                        processMatchSafe(itemUrl, page, context);
                     }
-                });
+                    return null;
+                }, parseExecutor));
+            } else {
+                scope.fork(s -> processMatchSafe(itemUrl, null, context));
             }
-            executorService.shutdown();
-            executorService.awaitTermination(1000, TimeUnit.HOURS);
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            throw e;
+        }
+    }
+
+    private void processMatchSafe(String url, String page, CrawlContext context) {
+        try {
+            processMatch(url, page != null ? page : fetch(url, null), context);
         } catch (Throwable t) {
+            processMatchFailure(url, t, context);
+        }
+    }
+
+    private void processMatchFailure(String url, Throwable t, CrawlContext context) {
+        context.getFailed().set(true);
+        if (t instanceof InterruptedException || t instanceof CancellationException) {
+            log.debug("Остановка потока обработки категории...");
+        } else {
+            eventProcessor.log("Ошибка '" + Utils.squeezeText(t.getMessage()) + "' во время обработки ссылки " + url);
             log.debug("Throwable", t);
         }
     }
 
-    private void processMatch(String url) throws InterruptedException {
+    private void processMatch(String url, String page, CrawlContext context) throws InterruptedException {
         //url = "https://www.futbol24.com/match/2017/02/27/international/International/Club-Friendly/2017/Hammarby/vs/Enskede/";
-        String page = fetch(url, null);
-        Document document = Jsoup.parse(page);
-        LocalDateTime date;
-        String homeTeam, guestTeam;
-        {
-            Element element = document.selectFirst("span.date.timezone");
-            date = LocalDateTime.parse(JSoupUtils.getText(element), MatchTableModel.DATE_TIME_FORMATTER);
-        }
-        {
-            Element element = document.selectFirst("thead > tr > td.home");
-            homeTeam = JSoupUtils.getText(element);
+        MatchPageExtractor.Result result = MatchPageExtractor.extract(page);
+        if (matchRecordStore != null && result.isFinal()) {
+            matchRecordStore.put(url, result);
+            context.getFound().add(url);
         }
-        {
-            Element element = document.selectFirst("thead > tr > td.guest");
-            guestTeam = JSoupUtils.getText(element);
-        }
-//        Pair<Integer, Integer> scoreHt = null, scoreFt = null;
-//        {
-//            for (Element tr : document.select("tbody > tr")) {
-//
-//                Element tdStatus = tr.selectFirst("td.status");
-//                String t = JSoupUtils.getText(tdStatus);
-//                if (StringUtils.equalsIgnoreCase(t, "HT")) {
-//                    scoreHt = parseScore(tr);
-//                } else if (StringUtils.equalsIgnoreCase(t, "FT")) {
-//                    scoreFt = parseScore(tr);
-//                }
-//            }
-//        }
-        Pair<Integer, Integer> scoreHt = null, scoreFt = null;
-        List<Match.Goal> goals = new ArrayList<>();
-        {
-            Elements trs = document.select("tbody > tr");
-            if (trs.size() == 0) {
-                log.debug("Нет информации о матче: " + url);
-                mainFrame.updateNoInfoUrls(currentCategories.get(), url);
-                return;
-            }
-            for (int i = 0; i < trs.size(); i++) {
-                Element tr = trs.get(i);
-                String trClass = tr.attr("class");
-                Match.Goal.Type type = Match.Goal.Type.fromCss(trClass);
-                if (type == Match.Goal.Type.RED_CARD ||
-                        type == Match.Goal.Type.YELLOW_CARD ||
-                        type == Match.Goal.Type.UNBEATEN_PENALTY) {
-                    continue;
-                }
-                String minute = JSoupUtils.getText(tr.selectFirst("td.status"));
-                {
-                    Pattern pattern = Pattern.compile("([0-9]+)(\\+[0-9]+)?");
-                    Matcher matcher = pattern.matcher(minute);
-                    if (matcher.matches()) {
-                        int m = Integer.parseInt(matcher.group(1));
-                        if (m <= 45) {
-                            scoreHt = parseScoreFromTableRow(tr);
-                        } else if (m <= 90) {
-                            scoreFt = parseScoreFromTableRow(tr);
-                        }
-                    }
-                }
-                String team;
-                String player;
-                if (StringUtils.containsIgnoreCase(trClass, "haction")) {
-                    team = homeTeam;
-                    player = JSoupUtils.getText(tr.selectFirst("td.home"));
-                } else if (StringUtils.containsIgnoreCase(trClass, "gaction")) {
-                    team = guestTeam;
-                    player = JSoupUtils.getText(tr.selectFirst("td.guest"));
-                } else {
-                    continue;
-                }
-                Pair<Integer, Integer> scoreBefore = i > 0 ? parseScoreFromTableRow(trs.get(i - 1)) : Pair.of(0, 0);
-                goals.add(new Match.Goal(type, minute, scoreBefore, team, player));
+        processResult(url, result, context);
+    }
+
+    /**
+     * Матчи раздела, обработанные в прошлых обходах, берутся из сохранённых результатов разбора без загрузки страниц.
+     */
+    private void replayKnownMatches(CrawlScope scope, CrawlContext context) throws InterruptedException {
+        for (String url : context.getKnown()) {
+            if (journaled.contains(url)) {
+                continue;
             }
-            if (check45And90SeveralGoals(goals) || (goals.size() == 0 && !scoreNull(document))) {
-                log.debug("Нет информации о матче: " + url);
-                mainFrame.updateNoInfoUrls(currentCategories.get(), url);
-                return;
+            MatchPageExtractor.Result record = matchRecordStore.get(url);
+            if (record != null) {
+                // не журналируется: после остановки матч снова будет взят из контрольной точки
+                showResult(url, record, context.getCategories(), context.getCategoriesOrder());
+            } else {
+                // запись устарела после смены версии разбора
+                scope.fork(s -> processMatchSafe(url, null, context));
             }
         }
-        if (scoreHt == null) {
-            scoreHt = Pair.of(0, 0);
+    }
+
+    /**
+     * Все матчи прерванного обхода попадают в таблицу из журнала, возвращаются разделы плана.
+     */
+    private List<Pair<String, List<String>>> resumeFromJournal() throws InterruptedException {
+        List<Pair<String, List<String>>> plan = journal != null ? journal.getPlan() : null;
+        if (plan == null) {
+            log.debug("Журнал обхода пуст, продолжать нечего");
+            return Collections.emptyList();
         }
-        if (scoreFt == null) {
-            scoreFt = scoreHt;
+        List<CrawlJournal.Entry> entries = journal.getMatches();
+        for (CrawlJournal.Entry entry : entries) {
+            journaled.add(entry.getUrl());
+            List<String> categories = plan.get(entry.getCategoriesOrder() - 1).getRight();
+            showResult(entry.getUrl(), entry.getResult(), categories, entry.getCategoriesOrder());
         }
-        Match match = new Match(date, homeTeam, guestTeam, currentCategories.get(), categoriesOrder.get(), scoreHt, scoreFt, url);
-        goals.forEach(match::addGoal);
-        checkForWait();
-        eventProcessor.find(match);
+        log.debug("Продолжение обхода: разделов " + plan.size() + ", восстановлено матчей " + entries.size());
+        return plan;
     }
 
-    private boolean check45And90SeveralGoals(List<Match.Goal> goals) {
-        int c45 = 0, c90 = 0;
-        for (Match.Goal goal : goals) {
-            if (StringUtils.equalsIgnoreCase(goal.getMinute(), "45")) {
-                c45++;
-            } else if (StringUtils.equalsIgnoreCase(goal.getMinute(), "90")) {
-                c90++;
-            }
+    /**
+     * Раздел отработал: без ошибок он отмечается в журнале и его контрольная точка обновляется.
+     */
+    private void finishCategory(CrawlScope rootScope, String categoryUrl, CrawlContext context) {
+        if (rootScope.isCancelled() || context.getFailed().get()) {
+            log.debug("Раздел обработан не полностью: " + context.getCategories());
+            return;
+        }
+        if (journal != null) {
+            journal.categoryDone(categoryUrl);
+        }
+        if (checkpointStore == null) {
+            return;
         }
-        return c45 > 1 || c90 > 1;
+        Set<String> matchUrls = new LinkedHashSet<>(context.getKnown());
+        matchUrls.addAll(context.getFound());
+        checkpointStore.put(categoryUrl, new CategoryCheckpointStore.Checkpoint(matchUrls, System.currentTimeMillis()));
+        log.debug("Контрольная точка раздела " + context.getCategories() + ": новых матчей " + context.getFound().size() + ", всего " + matchUrls.size());
     }
 
-    private Pair<Integer, Integer> parseScoreFromTableRow(Element tr) {
-        return parseScore(tr, "td.result");
+    private void processResult(String url, MatchPageExtractor.Result result, CrawlContext context) throws InterruptedException {
+        if (journal != null) {
+            journal.match(url, context.getCategoriesOrder(), result);
+        }
+        showResult(url, result, context.getCategories(), context.getCategoriesOrder());
     }
 
-    private boolean scoreNull(Element document) {
-        return parseScore(document, "td.result span.result1").equals(Pair.of(0, 0));
+    private void showResult(String url, MatchPageExtractor.Result result, List<String> categories, int categoriesOrder) throws InterruptedException {
+        if (result.isNoInfo()) {
+            log.debug("Нет информации о матче: " + url);
+            mainFrame.updateNoInfoUrls(categories, url);
+            return;
+        }
+        MatchStore.Row row = new MatchStore.Row(result.getDate(), result.getHomeTeam(), result.getGuestTeam(), categories, categoriesOrder,
+                result.getScoreHt(), result.getScoreFt(), url, result.getGoals());
+        checkForWait();
+        eventProcessor.find(row);
     }
 
-    private Pair<Integer, Integer> parseScore(Element tr, String xpath) {
-        Element td = tr.selectFirst(xpath);
-        String t = JSoupUtils.getText(td);
-        Matcher matcher = SCORE_PATTERN.matcher(t);
-        if (matcher.matches()) {
-            return Pair.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
-        }
-        throw new IllegalArgumentException("Ошибка формата результата матча: " + t);
+    /**
+     * Раздел, к которому относятся задачи обхода, вместо ThreadLocal передаётся явно.
+     */
+    @Value
+    private static class CrawlContext {
+        List<String> categories;
+        int categoriesOrder;
+        // матчи из контрольной точки и найденные в этом обходе окончательные результаты
+        Set<String> known;
+        Set<String> found;
+        AtomicBoolean failed;
     }
 }
@@ -0,0 +1,561 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jsoup.parser.Parser;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разбор страницы матча без построения DOM.
+ * <p>
+ * Страница проходится один раз по тегам, запоминается только текст нужных узлов:
+ * span.date.timezone, thead &gt; tr &gt; td.home/td.guest, строки таблицы событий
+ * (tbody &gt; tr: td.status, td.home, td.guest, td.result) и первый td.result span.result1.
+ * Строки вне thead/tfoot считаются строками tbody, как это делает Jsoup, достраивая tbody сам.
+ * Правила формирования голов и признаки "нет информации" те же, что были в MatchLoader.
+ */
+class MatchPageExtractor {
+
+    static final int VERSION = 1;
+
+    private static final Pattern SCORE_PATTERN = Pattern.compile("([0-9]+)\\s*-\\s*([0-9]+)");
+    private static final Pattern MINUTE_PATTERN = Pattern.compile("([0-9]+)(\\+[0-9]+)?");
+    private static final Pair<Integer, Integer> ZERO_SCORE = Pair.of(0, 0);
+
+    private MatchPageExtractor() {
+    }
+
+    @Value
+    static class Result {
+        boolean noInfo;
+        LocalDateTime date;
+        String homeTeam;
+        String guestTeam;
+        Pair<Integer, Integer> scoreHt;
+        Pair<Integer, Integer> scoreFt;
+        List<Match.Goal> goals;
+
+        static Result noInfo(LocalDateTime date) {
+            return new Result(true, date, null, null, null, null, Collections.emptyList());
+        }
+
+        /**
+         * С начала матча прошли сутки, результат разбора больше не изменится.
+         */
+        boolean isFinal() {
+            return date != null && isFinished(date);
+        }
+    }
+
+    static Result extract(String page) {
+        Scanner scanner = new Scanner(page);
+        scanner.run();
+        LocalDateTime date = LocalDateTime.parse(required(scanner.date, "span.date.timezone"), MatchTableModel.DATE_TIME_FORMATTER);
+        String homeTeam = scanner.homeTeam;
+        String guestTeam = scanner.guestTeam;
+        List<Row> rows = scanner.rows;
+        if (rows.isEmpty()) {
+            return Result.noInfo(date);
+        }
+        Pair<Integer, Integer> scoreHt = null, scoreFt = null;
+        List<Match.Goal> goals = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            Match.Goal.Type type = Match.Goal.Type.fromCss(row.cls);
+            if (type == Match.Goal.Type.RED_CARD ||
+                    type == Match.Goal.Type.YELLOW_CARD ||
+                    type == Match.Goal.Type.UNBEATEN_PENALTY) {
+                continue;
+            }
+            String minute = required(row.status, "td.status");
+            Matcher matcher = MINUTE_PATTERN.matcher(minute);
+            if (matcher.matches()) {
+                int m = Integer.parseInt(matcher.group(1));
+                if (m <= 45) {
+                    scoreHt = parseScore(row.result);
+                } else if (m <= 90) {
+                    scoreFt = parseScore(row.result);
+                }
+            }
+            String team;
+            String player;
+            if (StringUtils.containsIgnoreCase(row.cls, "haction")) {
+                team = homeTeam;
+                player = row.home;
+            } else if (StringUtils.containsIgnoreCase(row.cls, "gaction")) {
+                team = guestTeam;
+                player = row.guest;
+            } else {
+                continue;
+            }
+            Pair<Integer, Integer> scoreBefore = i > 0 ? parseScore(rows.get(i - 1).result) : ZERO_SCORE;
+            goals.add(new Match.Goal(type, minute, scoreBefore, team, player));
+        }
+        if (check45And90SeveralGoals(goals) || (goals.size() == 0 && !parseScore(scanner.result1).equals(ZERO_SCORE))) {
+            return Result.noInfo(date);
+        }
+        if (scoreHt == null) {
+            scoreHt = ZERO_SCORE;
+        }
+        if (scoreFt == null) {
+            scoreFt = scoreHt;
+        }
+        return new Result(false, date, homeTeam, guestTeam, scoreHt, scoreFt, goals);
+    }
+
+    /**
+     * Матч сыгран: на странице есть итоговый счёт, а с начала матча прошли сутки, то есть это не live-счёт.
+     */
+    static boolean hasFinalScore(String page) {
+        Scanner scanner = new Scanner(page);
+        scanner.run();
+        if (scanner.date == null || scanner.result1 == null || !SCORE_PATTERN.matcher(scanner.result1).matches()) {
+            return false;
+        }
+        try {
+            return isFinished(LocalDateTime.parse(scanner.date, MatchTableModel.DATE_TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isFinished(LocalDateTime date) {
+        return date.plusDays(1).isBefore(LocalDateTime.now());
+    }
+
+    private static boolean check45And90SeveralGoals(List<Match.Goal> goals) {
+        int c45 = 0, c90 = 0;
+        for (Match.Goal goal : goals) {
+            if (StringUtils.equalsIgnoreCase(goal.getMinute(), "45")) {
+                c45++;
+            } else if (StringUtils.equalsIgnoreCase(goal.getMinute(), "90")) {
+                c90++;
+            }
+        }
+        return c45 > 1 || c90 > 1;
+    }
+
+    private static Pair<Integer, Integer> parseScore(String t) {
+        Matcher matcher = SCORE_PATTERN.matcher(StringUtils.defaultString(t));
+        if (matcher.matches()) {
+            return Pair.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+        }
+        throw new IllegalArgumentException("Ошибка формата результата матча: " + t);
+    }
+
+    private static String required(String text, String selector) {
+        if (text == null) {
+            throw new IllegalArgumentException("Не найден элемент " + selector);
+        }
+        return text;
+    }
+
+    private static class Row {
+        private final String cls;
+        private String status;
+        private String home;
+        private String guest;
+        private String result;
+
+        private Row(String cls) {
+            this.cls = cls;
+        }
+    }
+
+    private enum Field {
+        DATE,
+        HOME_TEAM,
+        GUEST_TEAM,
+        RESULT1,
+        STATUS,
+        HOME,
+        GUEST,
+        RESULT
+    }
+
+    private static class Capture {
+        private final Field field;
+        private final Row row;
+        private final boolean cell;
+        private final int spanLevel;
+        private final StringBuilder text = new StringBuilder();
+
+        private Capture(Field field, Row row, boolean cell, int spanLevel) {
+            this.field = field;
+            this.row = row;
+            this.cell = cell;
+            this.spanLevel = spanLevel;
+        }
+    }
+
+    private static class Scanner {
+
+        private final String html;
+        private final List<Row> rows = new ArrayList<>();
+        private final Deque<Row> openRows = new ArrayDeque<>();
+        private final Deque<Boolean> openRowsInHead = new ArrayDeque<>();
+        private final List<Capture> captures = new ArrayList<>();
+
+        private String date;
+        private String homeTeam;
+        private String guestTeam;
+        private String result1;
+
+        private int theadDepth;
+        private int tfootDepth;
+        private int spanLevel;
+        private boolean inResultCell;
+
+        private Scanner(String html) {
+            this.html = html;
+        }
+
+        private void run() {
+            int n = html.length();
+            int pos = 0;
+            while (pos < n) {
+                int lt = html.indexOf('<', pos);
+                if (lt < 0) {
+                    text(pos, n);
+                    break;
+                }
+                if (lt > pos) {
+                    text(pos, lt);
+                }
+                if (html.startsWith("<!--", lt)) {
+                    int end = html.indexOf("-->", lt + 4);
+                    pos = end < 0 ? n : end + 3;
+                    continue;
+                }
+                if (lt + 1 >= n || !isTagStart(html.charAt(lt + 1))) {
+                    text(lt, lt + 1);
+                    pos = lt + 1;
+                    continue;
+                }
+                int gt = tagEnd(lt + 1);
+                if (gt < 0) {
+                    break;
+                }
+                pos = tag(lt, gt);
+            }
+        }
+
+        private boolean isTagStart(char c) {
+            return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+        }
+
+        private int tagEnd(int from) {
+            char quote = 0;
+            for (int i = from; i < html.length(); i++) {
+                char c = html.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return позиция, с которой продолжать разбор
+         */
+        private int tag(int lt, int gt) {
+            char first = html.charAt(lt + 1);
+            if (first == '!' || first == '?') {
+                return gt + 1;
+            }
+            boolean end = first == '/';
+            int nameStart = end ? lt + 2 : lt + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < gt && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            String name = html.substring(nameStart, nameEnd).toLowerCase();
+            if (end) {
+                endTag(name);
+                return gt + 1;
+            }
+            startTag(name, nameEnd, gt);
+            if (name.equals("script") || name.equals("style")) {
+                int close = indexOfIgnoreCase("</" + name, gt + 1);
+                return close < 0 ? html.length() : close;
+            }
+            return gt + 1;
+        }
+
+        private void startTag(String name, int attrsStart, int gt) {
+            switch (name) {
+                case "thead":
+                    theadDepth++;
+                    break;
+                case "tfoot":
+                    tfootDepth++;
+                    break;
+                case "tr": {
+                    closeCells();
+                    Row row = new Row(StringUtils.defaultString(attr(attrsStart, gt, "class")));
+                    boolean inHead = theadDepth > 0;
+                    openRows.push(row);
+                    openRowsInHead.push(inHead);
+                    if (!inHead && tfootDepth == 0) {
+                        rows.add(row);
+                    }
+                    break;
+                }
+                case "td":
+                case "th":
+                    closeCells();
+                    startCell(attr(attrsStart, gt, "class"));
+                    break;
+                case "span": {
+                    spanLevel++;
+                    String cls = attr(attrsStart, gt, "class");
+                    if (date == null && hasClass(cls, "date") && hasClass(cls, "timezone") && !capturing(Field.DATE)) {
+                        captures.add(new Capture(Field.DATE, null, false, spanLevel));
+                    }
+                    if (result1 == null && inResultCell && hasClass(cls, "result1") && !capturing(Field.RESULT1)) {
+                        captures.add(new Capture(Field.RESULT1, null, false, spanLevel));
+                    }
+                    break;
+                }
+                case "br":
+                    for (Capture capture : captures) {
+                        capture.text.append(' ');
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void endTag(String name) {
+            switch (name) {
+                case "thead":
+                    theadDepth = Math.max(theadDepth - 1, 0);
+                    break;
+                case "tfoot":
+                    tfootDepth = Math.max(tfootDepth - 1, 0);
+                    break;
+                case "tr":
+                    closeCells();
+                    if (!openRows.isEmpty()) {
+                        openRows.pop();
+                        openRowsInHead.pop();
+                    }
+                    break;
+                case "td":
+                case "th":
+                    closeCells();
+                    break;
+                case "span":
+                    for (int i = captures.size() - 1; i >= 0; i--) {
+                        Capture capture = captures.get(i);
+                        if (!capture.cell && capture.spanLevel == spanLevel) {
+                            finish(captures.remove(i));
+                        }
+                    }
+                    spanLevel = Math.max(spanLevel - 1, 0);
+                    break;
+                case "table":
+                case "tbody":
+                    closeCells();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void startCell(String cls) {
+            Row row = openRows.peek();
+            if (row == null) {
+                return;
+            }
+            inResultCell = hasClass(cls, "result");
+            if (openRowsInHead.peek()) {
+                if (homeTeam == null && hasClass(cls, "home")) {
+                    captures.add(new Capture(Field.HOME_TEAM, row, true, spanLevel));
+                } else if (guestTeam == null && hasClass(cls, "guest")) {
+                    captures.add(new Capture(Field.GUEST_TEAM, row, true, spanLevel));
+                }
+                return;
+            }
+            if (row.status == null && hasClass(cls, "status")) {
+                captures.add(new Capture(Field.STATUS, row, true, spanLevel));
+            }
+            if (row.home == null && hasClass(cls, "home")) {
+                captures.add(new Capture(Field.HOME, row, true, spanLevel));
+            }
+            if (row.guest == null && hasClass(cls, "guest")) {
+                captures.add(new Capture(Field.GUEST, row, true, spanLevel));
+            }
+            if (row.result == null && inResultCell) {
+                captures.add(new Capture(Field.RESULT, row, true, spanLevel));
+            }
+        }
+
+        private void closeCells() {
+            inResultCell = false;
+            for (int i = captures.size() - 1; i >= 0; i--) {
+                if (captures.get(i).cell) {
+                    finish(captures.remove(i));
+                }
+            }
+        }
+
+        private boolean capturing(Field field) {
+            for (Capture capture : captures) {
+                if (capture.field == field) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void text(int from, int to) {
+            for (Capture capture : captures) {
+                capture.text.append(html, from, to);
+            }
+        }
+
+        private void finish(Capture capture) {
+            String text = normalize(capture.text);
+            switch (capture.field) {
+                case DATE:
+                    date = text;
+                    break;
+                case HOME_TEAM:
+                    homeTeam = text;
+                    break;
+                case GUEST_TEAM:
+                    guestTeam = text;
+                    break;
+                case RESULT1:
+                    result1 = text;
+                    break;
+                case STATUS:
+                    capture.row.status = text;
+                    break;
+                case HOME:
+                    capture.row.home = text;
+                    break;
+                case GUEST:
+                    capture.row.guest = text;
+                    break;
+                case RESULT:
+                    capture.row.result = text;
+                    break;
+            }
+        }
+
+        private String normalize(StringBuilder raw) {
+            String text = raw.indexOf("&") >= 0 ? Parser.unescapeEntities(raw.toString(), false) : raw.toString();
+            StringBuilder sb = new StringBuilder(text.length());
+            boolean space = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00a0') {
+                    space = sb.length() > 0;
+                } else {
+                    if (space) {
+                        sb.append(' ');
+                        space = false;
+                    }
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private String attr(int from, int to, String name) {
+            int i = from;
+            while (i < to) {
+                while (i < to && (Character.isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+                    i++;
+                }
+                int nameStart = i;
+                while (i < to && html.charAt(i) != '=' && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                    i++;
+                }
+                boolean match = i - nameStart == name.length() && html.regionMatches(true, nameStart, name, 0, name.length());
+                while (i < to && Character.isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                if (i >= to || html.charAt(i) != '=') {
+                    if (i == nameStart) {
+                        i++;
+                    }
+                    continue;
+                }
+                i++;
+                while (i < to && Character.isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                int valueStart, valueEnd;
+                if (i < to && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i);
+                    valueStart = i + 1;
+                    valueEnd = html.indexOf(quote, valueStart);
+                    if (valueEnd < 0 || valueEnd > to) {
+                        valueEnd = to;
+                    }
+                    i = valueEnd + 1;
+                } else {
+                    valueStart = i;
+                    while (i < to && !Character.isWhitespace(html.charAt(i))) {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if (match) {
+                    return html.substring(valueStart, valueEnd);
+                }
+            }
+            return null;
+        }
+
+        private boolean hasClass(String cls, String name) {
+            if (cls == null) {
+                return false;
+            }
+            int n = cls.length();
+            int i = 0;
+            while (i < n) {
+                while (i < n && Character.isWhitespace(cls.charAt(i))) {
+                    i++;
+                }
+                int start = i;
+                while (i < n && !Character.isWhitespace(cls.charAt(i))) {
+                    i++;
+                }
+                if (i - start == name.length() && cls.regionMatches(true, start, name, 0, name.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int indexOfIgnoreCase(String s, int from) {
+            for (int i = from; i <= html.length() - s.length(); i++) {
+                if (html.regionMatches(true, i, s, 0, s.length())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
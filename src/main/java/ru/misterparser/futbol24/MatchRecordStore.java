@@ -0,0 +1,147 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Результаты разбора страниц сыгранных матчей, включая вердикт "нет информации", по ссылке на матч.
+ * <p>
+ * Запись хранит версию MatchPageExtractor, при которой получена: после изменения правил разбора
+ * старые записи не используются, и матч разбирается заново.
+ */
+@Slf4j
+class MatchRecordStore {
+
+    private static volatile MatchRecordStore matchRecordStore;
+
+    private final SegmentStore store;
+
+    private MatchRecordStore() throws IOException {
+        store = new SegmentStore(new File(ConfigurationUtils.getCurrentDirectory() + "match-records/"));
+    }
+
+    /**
+     * null, если хранилище не удалось открыть: тогда матчи просто разбираются каждый раз.
+     */
+    static MatchRecordStore get() {
+        if (matchRecordStore == null) {
+            synchronized (MatchRecordStore.class) {
+                if (matchRecordStore == null) {
+                    try {
+                        matchRecordStore = new MatchRecordStore();
+                    } catch (Exception e) {
+                        log.debug("Не удалось открыть хранилище разобранных матчей", e);
+                        return null;
+                    }
+                }
+            }
+        }
+        return matchRecordStore;
+    }
+
+    MatchPageExtractor.Result get(String url) {
+        try {
+            byte[] value = store.get(url);
+            return value != null ? decode(value) : null;
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    void put(String url, MatchPageExtractor.Result result) {
+        try {
+            store.put(url, encode(result));
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    /**
+     * Компактное представление результата разбора, используется также журналом обхода.
+     */
+    static byte[] encode(MatchPageExtractor.Result result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MatchPageExtractor.VERSION);
+            out.writeBoolean(result.isNoInfo());
+            out.writeLong(result.getDate() != null ? result.getDate().toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE);
+            if (result.isNoInfo()) {
+                return bytes.toByteArray();
+            }
+            writeString(out, result.getHomeTeam());
+            writeString(out, result.getGuestTeam());
+            writeScore(out, result.getScoreHt());
+            writeScore(out, result.getScoreFt());
+            out.writeShort(result.getGoals().size());
+            for (Match.Goal goal : result.getGoals()) {
+                out.writeByte(goal.getType().ordinal());
+                writeString(out, goal.getMinute());
+                writeScore(out, goal.getScoreBefore());
+                writeString(out, goal.getTeam());
+                writeString(out, goal.getPlayer());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * null, если запись сделана другой версией MatchPageExtractor.
+     */
+    static MatchPageExtractor.Result decode(byte[] value) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            if (in.readInt() != MatchPageExtractor.VERSION) {
+                return null;
+            }
+            boolean noInfo = in.readBoolean();
+            long epochSecond = in.readLong();
+            LocalDateTime date = epochSecond != Long.MIN_VALUE ? LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC) : null;
+            if (noInfo) {
+                return MatchPageExtractor.Result.noInfo(date);
+            }
+            String homeTeam = readString(in);
+            String guestTeam = readString(in);
+            Pair<Integer, Integer> scoreHt = readScore(in);
+            Pair<Integer, Integer> scoreFt = readScore(in);
+            int size = in.readShort();
+            List<Match.Goal> goals = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Match.Goal.Type type = Match.Goal.Type.values()[in.readByte()];
+                goals.add(new Match.Goal(type, readString(in), readScore(in), readString(in), readString(in)));
+            }
+            return new MatchPageExtractor.Result(false, date, homeTeam, guestTeam, scoreHt, scoreFt, goals);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeScore(DataOutputStream out, Pair<Integer, Integer> score) throws IOException {
+        out.writeShort(score.getLeft());
+        out.writeShort(score.getRight());
+    }
+
+    private static Pair<Integer, Integer> readScore(DataInputStream in) throws IOException {
+        return Pair.of((int) in.readShort(), (int) in.readShort());
+    }
+}
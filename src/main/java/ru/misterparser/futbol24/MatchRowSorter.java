@@ -0,0 +1,492 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.*;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Фильтрация и сортировка таблицы матчей в фоне.
+ * <p>
+ * TableRowSorter проверяет фильтр по всем строкам в потоке Swing на каждое нажатие клавиши. Здесь
+ * перефильтровка откладывается до паузы во вводе, строки проверяются параллельно частями, а готовый
+ * список видимых строк заменяет прежний одним присваиванием в потоке Swing. Новое изменение фильтра
+ * отменяет ещё не законченный расчёт. Пока он идёт, таблица показывает прежний список, а новые матчи
+ * проверяются сразу по фильтру этого списка и вставляются на свои места.
+ * <p>
+ * Строки сравниваются как строки, тем же Collator, что и у TableRowSorter, при равенстве - по порядку в модели.
+ */
+@Slf4j
+class MatchRowSorter extends RowSorter<MatchTableModel> {
+
+    private static final int DELAY = 200;
+    private static final int CHUNK = 4096;
+    private static final int MAX_SORT_KEYS = 3;
+
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(Collator::getInstance);
+
+    private final MatchTableModel model;
+    private final Supplier<String> searchText;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MatchRowSorter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Timer timer = new Timer(DELAY, e -> start());
+    // растёт при каждом изменении: расчёт с устаревшим номером прерывается, а его результат отбрасывается
+    private final AtomicInteger generation = new AtomicInteger();
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private View view;
+
+    /**
+     * Условия отбора и порядок, снятые в потоке Swing на момент запуска расчёта.
+     */
+    private static class Filter {
+        final MatchFilter matchFilter;
+        final String text;
+        final List<SortKey> sortKeys;
+
+        Filter(MatchFilter matchFilter, String text, List<SortKey> sortKeys) {
+            this.matchFilter = matchFilter;
+            this.text = text;
+            this.sortKeys = sortKeys;
+        }
+    }
+
+    /**
+     * Видимые строки: проверены строки модели до modelRowCount. При сортировке рядом хранятся ключи сравнения
+     * видимых строк по ключам сортировки фильтра, [ключ][позиция], чтобы новые строки вставлялись на свои места
+     * без повторного форматирования старых.
+     */
+    private static class View {
+        final int[] viewToModel;
+        final CollationKey[][] collationKeys;
+        final int modelRowCount;
+        final Filter filter;
+        private int[] modelToView;
+
+        View(int[] viewToModel, CollationKey[][] collationKeys, int modelRowCount, Filter filter) {
+            this.viewToModel = viewToModel;
+            this.collationKeys = collationKeys;
+            this.modelRowCount = modelRowCount;
+            this.filter = filter;
+        }
+
+        int[] getModelToView() {
+            if (modelToView == null) {
+                modelToView = new int[modelRowCount];
+                Arrays.fill(modelToView, -1);
+                for (int i = 0; i < viewToModel.length; i++) {
+                    modelToView[viewToModel[i]] = i;
+                }
+            }
+            return modelToView;
+        }
+    }
+
+    /**
+     * @param searchText текст поиска или null, вызывается в потоке Swing
+     */
+    MatchRowSorter(MatchTableModel model, Supplier<String> searchText) {
+        this.model = model;
+        this.searchText = searchText;
+        timer.setRepeats(false);
+        Filter filter = createFilter();
+        view = new View(new int[0], getCollationKeys(getSortedKeys(filter), new int[0]), 0, filter);
+        view = extend(view);
+        start();
+    }
+
+    /**
+     * Перефильтровка после паузы во вводе. Начатый расчёт прерывается сразу.
+     */
+    void refilter() {
+        generation.incrementAndGet();
+        timer.restart();
+    }
+
+    private void refilterNow() {
+        timer.stop();
+        start();
+    }
+
+    private Filter createFilter() {
+        return new Filter(MatchFilter.get(), searchText.get(), sortKeys);
+    }
+
+    private void start() {
+        int current = generation.incrementAndGet();
+        Filter filter = createFilter();
+        executor.execute(() -> calc(current, filter));
+    }
+
+    private boolean isStale(int current) {
+        return generation.get() != current;
+    }
+
+    private void calc(int current, Filter filter) {
+        if (isStale(current)) {
+            return;
+        }
+        try {
+            int rowCount;
+            BitSet found = null;
+            if (filter.text != null) {
+                // строки, добавленные после подсчёта, допроверятся в потоке Swing
+                rowCount = model.getSearchRowCount();
+                found = model.findSearchMatches(filter.text);
+            } else {
+                rowCount = model.getRowCount();
+            }
+            boolean[] included = new boolean[rowCount];
+            ForkJoinPool.commonPool().invoke(new FilterTask(current, filter, found, included, 0, rowCount));
+            if (isStale(current)) {
+                return;
+            }
+            int[] rows = IntStream.range(0, rowCount).filter(row -> included[row]).toArray();
+            View calculated = sort(current, filter, rows, rowCount);
+            if (calculated == null) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> publish(current, calculated));
+        } catch (Exception e) {
+            // устаревший расчёт мог застать очистку таблицы
+            if (!isStale(current)) {
+                log.debug("Exception", e);
+            }
+        }
+    }
+
+    private class FilterTask extends RecursiveAction {
+        private final int current;
+        private final Filter filter;
+        private final BitSet found;
+        private final boolean[] included;
+        private final int from;
+        private final int to;
+
+        FilterTask(int current, Filter filter, BitSet found, boolean[] included, int from, int to) {
+            this.current = current;
+            this.filter = filter;
+            this.found = found;
+            this.included = included;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (isStale(current)) {
+                return;
+            }
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FilterTask(current, filter, found, included, from, middle),
+                        new FilterTask(current, filter, found, included, middle, to));
+                return;
+            }
+            for (int row = from; row < to; row++) {
+                included[row] = (found == null || found.get(row)) && filter.matchFilter.include(model.getMatch(row));
+            }
+        }
+    }
+
+    /**
+     * Сортировка по ключам сравнения, посчитанным для видимых строк параллельно. Null, если расчёт устарел.
+     */
+    private View sort(int current, Filter filter, int[] rows, int rowCount) {
+        List<SortKey> keys = getSortedKeys(filter);
+        if (keys.isEmpty()) {
+            return new View(rows, null, rowCount, filter);
+        }
+        CollationKey[][] collationKeys = new CollationKey[keys.size()][rows.length];
+        IntStream.range(0, rows.length).parallel().forEach(i -> {
+            if (isStale(current)) {
+                return;
+            }
+            for (int k = 0; k < keys.size(); k++) {
+                collationKeys[k][i] = getCollationKey(rows[i], keys.get(k).getColumn(), COLLATOR.get());
+            }
+        });
+        if (isStale(current)) {
+            return null;
+        }
+        return sort(keys, rows, collationKeys, rowCount, filter);
+    }
+
+    private static View sort(List<SortKey> keys, int[] rows, CollationKey[][] collationKeys, int rowCount, Filter filter) {
+        Integer[] positions = new Integer[rows.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        Arrays.parallelSort(positions, (p1, p2) -> compare(keys, collationKeys, p1, rows[p1], collationKeys, p2, rows[p2]));
+        int[] sortedRows = new int[rows.length];
+        CollationKey[][] sortedKeys = new CollationKey[keys.size()][rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sortedRows[i] = rows[positions[i]];
+            for (int k = 0; k < keys.size(); k++) {
+                sortedKeys[k][i] = collationKeys[k][positions[i]];
+            }
+        }
+        return new View(sortedRows, sortedKeys, rowCount, filter);
+    }
+
+    private CollationKey[][] getCollationKeys(List<SortKey> keys, int[] rows) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        Collator collator = COLLATOR.get();
+        CollationKey[][] collationKeys = new CollationKey[keys.size()][rows.length];
+        for (int k = 0; k < keys.size(); k++) {
+            for (int i = 0; i < rows.length; i++) {
+                collationKeys[k][i] = getCollationKey(rows[i], keys.get(k).getColumn(), collator);
+            }
+        }
+        return collationKeys;
+    }
+
+    private CollationKey getCollationKey(int row, int column, Collator collator) {
+        Object value = model.getValueAt(row, column);
+        return value != null ? collator.getCollationKey(value.toString()) : null;
+    }
+
+    /**
+     * Порядок двух строк: по ключам сортировки, при равенстве - по порядку в модели.
+     */
+    private static int compare(List<SortKey> keys, CollationKey[][] keys1, int position1, int row1, CollationKey[][] keys2, int position2, int row2) {
+        for (int k = 0; k < keys.size(); k++) {
+            int result = compare(keys1[k][position1], keys2[k][position2]);
+            if (result != 0) {
+                return keys.get(k).getSortOrder() == SortOrder.DESCENDING ? -result : result;
+            }
+        }
+        return Integer.compare(row1, row2);
+    }
+
+    private static List<SortKey> getSortedKeys(Filter filter) {
+        List<SortKey> keys = new ArrayList<>();
+        for (SortKey key : filter.sortKeys) {
+            if (key.getSortOrder() != SortOrder.UNSORTED) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static int compare(CollationKey key1, CollationKey key2) {
+        if (key1 == null) {
+            return key2 == null ? 0 : -1;
+        }
+        return key2 == null ? 1 : key1.compareTo(key2);
+    }
+
+    private void publish(int current, View calculated) {
+        if (isStale(current)) {
+            return;
+        }
+        setView(extend(calculated));
+    }
+
+    private void setView(View newView) {
+        int[] lastViewToModel = view.viewToModel;
+        view = newView;
+        fireRowSorterChanged(lastViewToModel);
+    }
+
+    /**
+     * Строки модели, появившиеся после расчёта списка, проверяются его фильтром и вливаются на свои места:
+     * ключи сравнения считаются только для новых строк, место каждой ищется делением пополам.
+     * Если модель очищена, из списка убираются исчезнувшие строки.
+     */
+    private View extend(View view) {
+        int rowCount = model.getRowCount();
+        Filter filter = view.filter;
+        List<SortKey> keys = getSortedKeys(filter);
+        if (rowCount < view.modelRowCount) {
+            int[] positions = IntStream.range(0, view.viewToModel.length).filter(i -> view.viewToModel[i] < rowCount).toArray();
+            int[] rows = new int[positions.length];
+            CollationKey[][] collationKeys = keys.isEmpty() ? null : new CollationKey[keys.size()][positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                rows[i] = view.viewToModel[positions[i]];
+                for (int k = 0; k < keys.size(); k++) {
+                    collationKeys[k][i] = view.collationKeys[k][positions[i]];
+                }
+            }
+            return new View(rows, collationKeys, rowCount, filter);
+        }
+        if (rowCount == view.modelRowCount) {
+            return view;
+        }
+        int[] added = IntStream.range(view.modelRowCount, rowCount)
+                .filter(row -> filter.matchFilter.include(model.getMatch(row)) && (filter.text == null || model.isSearchMatch(row, filter.text)))
+                .toArray();
+        if (added.length == 0) {
+            return new View(view.viewToModel, view.collationKeys, rowCount, filter);
+        }
+        int[] old = view.viewToModel;
+        int[] rows = new int[old.length + added.length];
+        if (keys.isEmpty()) {
+            System.arraycopy(old, 0, rows, 0, old.length);
+            System.arraycopy(added, 0, rows, old.length, added.length);
+            return new View(rows, null, rowCount, filter);
+        }
+        View addedView = sort(keys, added, getCollationKeys(keys, added), rowCount, filter);
+        CollationKey[][] oldKeys = view.collationKeys;
+        CollationKey[][] newKeys = addedView.collationKeys;
+        CollationKey[][] collationKeys = new CollationKey[keys.size()][rows.length];
+        int from = 0;
+        int to = 0;
+        for (int j = 0; j < added.length; j++) {
+            int row = addedView.viewToModel[j];
+            // первая старая строка, которая должна идти после новой; новые строки упорядочены, поэтому места не убывают
+            int low = from;
+            int high = old.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(keys, oldKeys, middle, old[middle], newKeys, j, row) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            to = copy(old, oldKeys, from, low, rows, collationKeys, to);
+            from = low;
+            rows[to] = row;
+            for (int k = 0; k < keys.size(); k++) {
+                collationKeys[k][to] = newKeys[k][j];
+            }
+            to++;
+        }
+        copy(old, oldKeys, from, old.length, rows, collationKeys, to);
+        return new View(rows, collationKeys, rowCount, filter);
+    }
+
+    private static int copy(int[] rows, CollationKey[][] keys, int from, int to, int[] targetRows, CollationKey[][] targetKeys, int position) {
+        System.arraycopy(rows, from, targetRows, position, to - from);
+        for (int k = 0; k < keys.length; k++) {
+            System.arraycopy(keys[k], from, targetKeys[k], position, to - from);
+        }
+        return position + to - from;
+    }
+
+    @Override
+    public MatchTableModel getModel() {
+        return model;
+    }
+
+    /**
+     * Как у DefaultRowSorter: повторный щелчок по главному столбцу меняет направление, другой столбец становится главным.
+     */
+    @Override
+    public void toggleSortOrder(int column) {
+        List<SortKey> keys = new ArrayList<>(sortKeys);
+        SortKey sortKey = new SortKey(column, SortOrder.ASCENDING);
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).getColumn() == column) {
+                if (i == 0 && keys.get(i).getSortOrder() == SortOrder.ASCENDING) {
+                    sortKey = new SortKey(column, SortOrder.DESCENDING);
+                }
+                keys.remove(i);
+                break;
+            }
+        }
+        keys.add(0, sortKey);
+        while (keys.size() > MAX_SORT_KEYS) {
+            keys.remove(keys.size() - 1);
+        }
+        setSortKeys(keys);
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        int[] viewToModel = view.viewToModel;
+        if (index < 0 || index >= viewToModel.length) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (index < 0 || index >= model.getRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        int[] modelToView = view.getModelToView();
+        return index < modelToView.length ? modelToView[index] : -1;
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> newKeys = keys != null ? Collections.unmodifiableList(new ArrayList<>(keys)) : Collections.emptyList();
+        if (!newKeys.equals(sortKeys)) {
+            sortKeys = newKeys;
+            fireSortOrderChanged();
+            refilterNow();
+        }
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return view.viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        allRowsChanged();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        setView(extend(view));
+        refilterNow();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        // строки только добавляются в конец модели
+        View extended = extend(view);
+        if (extended.viewToModel.length != view.viewToModel.length) {
+            setView(extended);
+        } else {
+            view = extended;
+        }
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        allRowsChanged();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        refilterNow();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        refilterNow();
+    }
+}
@@ -0,0 +1,280 @@
+package ru.misterparser.futbol24;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Текстовый поиск по строкам таблицы матчей.
+ * <p>
+ * Команды, лига и части ссылки на матч повторяются из строки в строку, поэтому хранятся словарём термов:
+ * у терма список строк, где он встречается, а словарь проиндексирован по триграммам. Запрос ищется
+ * в словаре, и строки берутся из списков найденных термов. Дата, голы и счета у каждой строки свои,
+ * их текст нормализуется один раз при добавлении строки и просматривается, только если в запросе
+ * нет символов, которых в этих столбцах не бывает, - то есть для запросов из цифр и знаков вроде 45+ или 1,0.
+ * Запрос через границу частей ссылки (с косой чертой) проверяется по ссылкам строк.
+ * <p>
+ * Результат последнего запроса запоминается отдельно для matches и find, чтобы поток Swing и фоновый расчёт
+ * не сбрасывали запросы друг друга, и дополняется по мере добавления строк. Словарь и тексты новых строк
+ * просматриваются вне блокировки индекса: под ней только копируются ссылки на них, и add не ждёт просмотра.
+ */
+class MatchSearchIndex {
+
+    private static final String SEPARATOR = "\n";
+    private static final int[] TERM_COLUMNS = {MatchTableModel.LEAGUE_COLUMN, MatchTableModel.HOME_TEAM_COLUMN, MatchTableModel.GUEST_TEAM_COLUMN};
+    private static final int[] TEXT_COLUMNS = {MatchTableModel.DATE_COLUMN, MatchTableModel.GOALS_COLUMN, MatchTableModel.SCORE_HT_COLUMN, MatchTableModel.SCORE_FT_COLUMN};
+
+    private final List<String> terms = new ArrayList<>();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<IntList> postings = new ArrayList<>();
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+    private final List<String> texts = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+    // символы, встречающиеся в тексте строк
+    private final BitSet textChars = new BitSet();
+
+    private volatile Query matchQuery;
+    private volatile Query findQuery;
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Последний запрос: найденные строки и докуда просмотрены словарь, списки строк термов и тексты строк.
+     * Изменяется под собственной блокировкой.
+     */
+    private static class Query {
+        final String text;
+        final boolean scanUrls;
+        // пересчитывается, пока ложно: символы запроса могут появиться в текстах новых строк
+        boolean scanTexts;
+        final BitSet rows = new BitSet();
+        final List<Integer> matchedTerms = new ArrayList<>();
+        final List<Integer> cursors = new ArrayList<>();
+        int checkedTerms;
+        int checkedRows;
+
+        Query(String text, boolean scanTexts, boolean scanUrls) {
+            this.text = text;
+            this.scanTexts = scanTexts;
+            this.scanUrls = scanUrls;
+        }
+    }
+
+    /**
+     * Строка таблицы в виде столбцов, как их показывает MatchTableModel. Строки добавляются по порядку.
+     */
+    synchronized void add(String[] columns) {
+        int row = texts.size();
+        Set<Integer> rowTerms = new LinkedHashSet<>();
+        for (int column : TERM_COLUMNS) {
+            rowTerms.add(getTermId(columns[column]));
+        }
+        String url = columns[MatchTableModel.URL_COLUMN];
+        for (String segment : StringUtils.split(url, '/')) {
+            rowTerms.add(getTermId(segment));
+        }
+        for (int termId : rowTerms) {
+            postings.get(termId).add(row);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int column : TEXT_COLUMNS) {
+            text.append(normalize(columns[column])).append(SEPARATOR);
+        }
+        String s = text.toString();
+        for (int i = 0; i < s.length(); i++) {
+            textChars.set(s.charAt(i));
+        }
+        texts.add(s);
+        urls.add(url);
+    }
+
+    /**
+     * Строка содержит текст хотя бы в одном столбце, без учёта регистра.
+     */
+    boolean matches(int row, String text) {
+        String normalized = normalize(text);
+        Query query = matchQuery;
+        if (query == null || !query.text.equals(normalized)) {
+            query = createQuery(normalized);
+            matchQuery = query;
+        }
+        synchronized (query) {
+            if (row >= query.checkedRows) {
+                update(query);
+            }
+            return query.rows.get(row);
+        }
+    }
+
+    /**
+     * Все строки, содержащие текст, среди добавленных к моменту вызова.
+     */
+    BitSet find(String text) {
+        String normalized = normalize(text);
+        Query query = findQuery;
+        if (query == null || !query.text.equals(normalized)) {
+            query = createQuery(normalized);
+            findQuery = query;
+        }
+        synchronized (query) {
+            update(query);
+            return (BitSet) query.rows.clone();
+        }
+    }
+
+    /**
+     * Число добавленных строк.
+     */
+    synchronized int size() {
+        return texts.size();
+    }
+
+    private synchronized Query createQuery(String text) {
+        Query query = new Query(text, isTextChars(text), text.indexOf('/') >= 0);
+        for (int termId : findTerms(text)) {
+            query.matchedTerms.add(termId);
+            query.cursors.add(0);
+        }
+        query.checkedTerms = terms.size();
+        return query;
+    }
+
+    /**
+     * Все символы текста встречаются в текстах строк.
+     */
+    private boolean isTextChars(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!textChars.get(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Термы, содержащие текст: кандидаты берутся по самой редкой триграмме текста.
+     */
+    private List<Integer> findTerms(String text) {
+        List<Integer> found = new ArrayList<>();
+        if (text.length() < 3) {
+            for (int termId = 0; termId < terms.size(); termId++) {
+                if (terms.get(termId).contains(text)) {
+                    found.add(termId);
+                }
+            }
+            return found;
+        }
+        IntList candidates = null;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            IntList list = trigrams.get(getTrigram(text, i));
+            if (list == null) {
+                return found;
+            }
+            if (candidates == null || list.size < candidates.size) {
+                candidates = list;
+            }
+        }
+        for (int i = 0; i < candidates.size; i++) {
+            int termId = candidates.values[i];
+            if (terms.get(termId).contains(text)) {
+                found.add(termId);
+            }
+        }
+        return found;
+    }
+
+    private void update(Query query) {
+        int termCount;
+        int rowCount;
+        List<String> newTerms;
+        List<String> newTexts = null;
+        List<String> newUrls = null;
+        synchronized (this) {
+            termCount = terms.size();
+            rowCount = texts.size();
+            if (query.checkedTerms == termCount && query.checkedRows == rowCount) {
+                return;
+            }
+            newTerms = new ArrayList<>(terms.subList(query.checkedTerms, termCount));
+            if (!query.scanTexts) {
+                // уже просмотренные строки запрос содержать не могут: в их текстах нет какого-то из его символов
+                query.scanTexts = isTextChars(query.text);
+            }
+            if (query.scanTexts) {
+                newTexts = new ArrayList<>(texts.subList(query.checkedRows, rowCount));
+            }
+            if (query.scanUrls) {
+                newUrls = new ArrayList<>(urls.subList(query.checkedRows, rowCount));
+            }
+        }
+        for (int i = 0; i < newTerms.size(); i++) {
+            if (newTerms.get(i).contains(query.text)) {
+                query.matchedTerms.add(query.checkedTerms + i);
+                query.cursors.add(0);
+            }
+        }
+        query.checkedTerms = termCount;
+        synchronized (this) {
+            // строки, добавленные после копирования, тоже попадут в результат: их термы уже проверены
+            for (int i = 0; i < query.matchedTerms.size(); i++) {
+                IntList rows = postings.get(query.matchedTerms.get(i));
+                for (int j = query.cursors.get(i); j < rows.size; j++) {
+                    query.rows.set(rows.values[j]);
+                }
+                query.cursors.set(i, rows.size);
+            }
+        }
+        for (int i = 0; i < rowCount - query.checkedRows; i++) {
+            if (newTexts != null && newTexts.get(i).contains(query.text)
+                    || newUrls != null && StringUtils.containsIgnoreCase(newUrls.get(i), query.text)) {
+                query.rows.set(query.checkedRows + i);
+            }
+        }
+        query.checkedRows = rowCount;
+    }
+
+    private int getTermId(String s) {
+        String term = normalize(s);
+        Integer termId = termIds.get(term);
+        if (termId == null) {
+            termId = terms.size();
+            terms.add(term);
+            termIds.put(term, termId);
+            postings.add(new IntList());
+            Set<Long> termTrigrams = new LinkedHashSet<>();
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                termTrigrams.add(getTrigram(term, i));
+            }
+            for (long trigram : termTrigrams) {
+                trigrams.computeIfAbsent(trigram, k -> new IntList()).add(termId);
+            }
+        }
+        return termId;
+    }
+
+    private static long getTrigram(String s, int i) {
+        return (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+
+    private static String normalize(String s) {
+        return s != null ? s.toLowerCase(Locale.ROOT) : "null";
+    }
+}
@@ -0,0 +1,399 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Найденные матчи, разложенные по столбцам примитивных массивов.
+ * <p>
+ * На матч приходится несколько int: дата в минутах эпохи, счета таймов, упакованные в int, номер раздела
+ * и ссылки на строки. Голы матча лежат подряд в столбцах голов начиная с goalOffsets[index]: минута
+ * закодирована как основная минута и добавленное время, счёт перед голом упакован. Команды, игроки
+ * и разделы хранятся один раз в пуле строк. Match - представление строки хранилища.
+ * <p>
+ * Добавление идёт под блокировкой, чтение без неё: массивы при росте копируются и публикуются
+ * через volatile, а строка становится видна после увеличения size.
+ */
+class MatchStore {
+
+    static final int NO_VALUE = -1;
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int STOPPAGE_FLAG = 0x80;
+
+    /**
+     * Столбцы. При росте создаётся новый экземпляр со скопированными массивами.
+     */
+    private static class Columns {
+        int[] dates;
+        int[] homeTeams;
+        int[] guestTeams;
+        int[] categories;
+        int[] categoriesOrders;
+        int[] scoresHt;
+        int[] scoresFt;
+        String[] urls;
+        int[] goalOffsets;
+
+        byte[] goalTypes;
+        int[] goalMinutes;
+        int[] goalScoresBefore;
+        int[] goalTeams;
+        int[] goalPlayers;
+
+        String[] strings;
+        List<String>[] categoryLists;
+
+        Columns copy() {
+            Columns columns = new Columns();
+            columns.dates = dates;
+            columns.homeTeams = homeTeams;
+            columns.guestTeams = guestTeams;
+            columns.categories = categories;
+            columns.categoriesOrders = categoriesOrders;
+            columns.scoresHt = scoresHt;
+            columns.scoresFt = scoresFt;
+            columns.urls = urls;
+            columns.goalOffsets = goalOffsets;
+            columns.goalTypes = goalTypes;
+            columns.goalMinutes = goalMinutes;
+            columns.goalScoresBefore = goalScoresBefore;
+            columns.goalTeams = goalTeams;
+            columns.goalPlayers = goalPlayers;
+            columns.strings = strings;
+            columns.categoryLists = categoryLists;
+            return columns;
+        }
+    }
+
+    /**
+     * Найденный матч до добавления в хранилище: загрузчик передаёт в таблицу поля, а представление Match
+     * создаётся только при добавлении.
+     */
+    @Value
+    static class Row {
+        LocalDateTime date;
+        String homeTeam;
+        String guestTeam;
+        List<String> categories;
+        int categoriesOrder;
+        Pair<Integer, Integer> scoreHt;
+        Pair<Integer, Integer> scoreFt;
+        String url;
+        List<Match.Goal> goals;
+    }
+
+    private volatile Columns columns;
+    private volatile int size;
+    private int goalCount;
+    private int stringCount;
+    private int categoryCount;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final Map<List<String>, Integer> categoryIds = new HashMap<>();
+
+    MatchStore() {
+        this(1024, 8192);
+    }
+
+    @SuppressWarnings("unchecked")
+    MatchStore(int matches, int goals) {
+        Columns columns = new Columns();
+        columns.dates = new int[matches];
+        columns.homeTeams = new int[matches];
+        columns.guestTeams = new int[matches];
+        columns.categories = new int[matches];
+        columns.categoriesOrders = new int[matches];
+        columns.scoresHt = new int[matches];
+        columns.scoresFt = new int[matches];
+        columns.urls = new String[matches];
+        columns.goalOffsets = new int[matches + 1];
+        columns.goalTypes = new byte[goals];
+        columns.goalMinutes = new int[goals];
+        columns.goalScoresBefore = new int[goals];
+        columns.goalTeams = new int[goals];
+        columns.goalPlayers = new int[goals];
+        columns.strings = new String[Math.max(16, matches)];
+        columns.categoryLists = new List[16];
+        this.columns = columns;
+    }
+
+    Match add(Row row) {
+        return add(row.getDate(), row.getHomeTeam(), row.getGuestTeam(), row.getCategories(), row.getCategoriesOrder(),
+                row.getScoreHt(), row.getScoreFt(), row.getUrl(), row.getGoals());
+    }
+
+    synchronized Match add(LocalDateTime date, String homeTeam, String guestTeam, List<String> categories, int categoriesOrder,
+                           Pair<Integer, Integer> scoreHt, Pair<Integer, Integer> scoreFt, String url, List<Match.Goal> goals) {
+        int index = size;
+        Columns c = ensureCapacity(index + 1, goalCount + goals.size());
+        c.dates[index] = date != null ? (int) (date.toEpochSecond(ZoneOffset.UTC) / 60) : NO_DATE;
+        c.homeTeams[index] = intern(homeTeam);
+        c.guestTeams[index] = intern(guestTeam);
+        c.categories[index] = internCategories(categories);
+        c.categoriesOrders[index] = categoriesOrder;
+        c.scoresHt[index] = packScore(scoreHt);
+        c.scoresFt[index] = packScore(scoreFt);
+        c.urls[index] = url;
+        for (Match.Goal goal : goals) {
+            c.goalTypes[goalCount] = (byte) goal.getType().ordinal();
+            c.goalMinutes[goalCount] = encodeMinuteOrIntern(goal.getMinute());
+            c.goalScoresBefore[goalCount] = packScore(goal.getScoreBefore());
+            c.goalTeams[goalCount] = intern(goal.getTeam());
+            c.goalPlayers[goalCount] = intern(goal.getPlayer());
+            goalCount++;
+        }
+        // intern мог заменить столбцы копией, но массивы матчей и голов в ней те же
+        c.goalOffsets[index + 1] = goalCount;
+        size = index + 1;
+        return new Match(this, index);
+    }
+
+    int size() {
+        return size;
+    }
+
+    Match get(int index) {
+        return new Match(this, index);
+    }
+
+    /**
+     * Неизменяемый список матчей, добавленных к моменту вызова.
+     */
+    List<Match> asList() {
+        int size = this.size;
+        return new AbstractList<Match>() {
+            @Override
+            public Match get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+                }
+                return new Match(MatchStore.this, index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    LocalDateTime getDate(int index) {
+        int minutes = columns.dates[index];
+        return minutes != NO_DATE ? LocalDateTime.ofEpochSecond(minutes * 60L, 0, ZoneOffset.UTC) : null;
+    }
+
+    String getHomeTeam(int index) {
+        Columns c = columns;
+        return getString(c, c.homeTeams[index]);
+    }
+
+    String getGuestTeam(int index) {
+        Columns c = columns;
+        return getString(c, c.guestTeams[index]);
+    }
+
+    List<String> getCategories(int index) {
+        Columns c = columns;
+        return c.categoryLists[c.categories[index]];
+    }
+
+    int getCategoriesOrder(int index) {
+        return columns.categoriesOrders[index];
+    }
+
+    int getScoreHt(int index) {
+        return columns.scoresHt[index];
+    }
+
+    int getScoreFt(int index) {
+        return columns.scoresFt[index];
+    }
+
+    String getUrl(int index) {
+        return columns.urls[index];
+    }
+
+    int getGoalStart(int index) {
+        return columns.goalOffsets[index];
+    }
+
+    int getGoalEnd(int index) {
+        return columns.goalOffsets[index + 1];
+    }
+
+    Match.Goal.Type getGoalType(int goal) {
+        return Match.Goal.Type.values()[columns.goalTypes[goal]];
+    }
+
+    /**
+     * Код минуты гола: неотрицательный для минут вида 45 и 45+2, иначе ссылка на строку в пуле.
+     */
+    int getGoalMinuteCode(int goal) {
+        return columns.goalMinutes[goal];
+    }
+
+    String getGoalMinute(int goal) {
+        Columns c = columns;
+        int code = c.goalMinutes[goal];
+        return code >= 0 ? decodeMinute(code) : getString(c, -code - 2);
+    }
+
+    int getGoalScoreBefore(int goal) {
+        return columns.goalScoresBefore[goal];
+    }
+
+    String getGoalTeam(int goal) {
+        Columns c = columns;
+        return getString(c, c.goalTeams[goal]);
+    }
+
+    String getGoalPlayer(int goal) {
+        Columns c = columns;
+        return getString(c, c.goalPlayers[goal]);
+    }
+
+    static int packScore(Pair<Integer, Integer> score) {
+        return score != null ? score.getLeft() << 16 | score.getRight() & 0xFFFF : NO_VALUE;
+    }
+
+    static Pair<Integer, Integer> unpackScore(int score) {
+        return score != NO_VALUE ? Pair.of(getLeft(score), getRight(score)) : null;
+    }
+
+    static int getLeft(int score) {
+        return score >>> 16;
+    }
+
+    static int getRight(int score) {
+        return score & 0xFFFF;
+    }
+
+    static String decodeMinute(int code) {
+        int minute = code >>> 8;
+        if ((code & STOPPAGE_FLAG) == 0) {
+            return String.valueOf(minute);
+        }
+        int stoppage = code & 0x7F;
+        return minute + "+" + (stoppage > 0 ? String.valueOf(stoppage) : "");
+    }
+
+    /**
+     * Минута вида 45, 45+ или 45+2 в коде, NO_VALUE - другая запись, её придётся хранить строкой.
+     */
+    private static int encodeMinute(String minute) {
+        if (minute == null) {
+            return NO_VALUE;
+        }
+        int plus = minute.indexOf('+');
+        String base = plus >= 0 ? minute.substring(0, plus) : minute;
+        String stoppage = plus >= 0 ? minute.substring(plus + 1) : "";
+        if (!isNumber(base, 5) || !stoppage.isEmpty() && !isNumber(stoppage, 2)) {
+            return NO_VALUE;
+        }
+        int code = Integer.parseInt(base) << 8;
+        if (plus >= 0) {
+            int s = stoppage.isEmpty() ? 0 : Integer.parseInt(stoppage);
+            if (s > 0x7F) {
+                return NO_VALUE;
+            }
+            code |= STOPPAGE_FLAG | s;
+        }
+        // ведущие нули и прочее, что не восстанавливается из кода
+        return decodeMinute(code).equals(minute) ? code : NO_VALUE;
+    }
+
+    private static boolean isNumber(String s, int maxLength) {
+        if (s.isEmpty() || s.length() > maxLength) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int encodeMinuteOrIntern(String minute) {
+        int code = encodeMinute(minute);
+        return code != NO_VALUE || minute == null ? code : -intern(minute) - 2;
+    }
+
+    private static String getString(Columns c, int id) {
+        return id != NO_VALUE ? c.strings[id] : null;
+    }
+
+    private int intern(String s) {
+        if (s == null) {
+            return NO_VALUE;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            Columns c = columns;
+            if (stringCount == c.strings.length) {
+                c = c.copy();
+                c.strings = Arrays.copyOf(c.strings, stringCount * 2);
+                columns = c;
+            }
+            c.strings[stringCount] = s;
+            id = stringCount++;
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private int internCategories(List<String> categories) {
+        Integer id = categoryIds.get(categories);
+        if (id == null) {
+            Columns c = columns;
+            if (categoryCount == c.categoryLists.length) {
+                c = c.copy();
+                c.categoryLists = Arrays.copyOf(c.categoryLists, categoryCount * 2);
+                columns = c;
+            }
+            List<String> list = List.copyOf(categories);
+            c.categoryLists[categoryCount] = list;
+            id = categoryCount++;
+            categoryIds.put(list, id);
+        }
+        return id;
+    }
+
+    private Columns ensureCapacity(int matches, int goals) {
+        Columns c = columns;
+        if (matches <= c.dates.length && goals <= c.goalTypes.length) {
+            return c;
+        }
+        c = c.copy();
+        if (matches > c.dates.length) {
+            int capacity = Math.max(matches, c.dates.length * 2);
+            c.dates = Arrays.copyOf(c.dates, capacity);
+            c.homeTeams = Arrays.copyOf(c.homeTeams, capacity);
+            c.guestTeams = Arrays.copyOf(c.guestTeams, capacity);
+            c.categories = Arrays.copyOf(c.categories, capacity);
+            c.categoriesOrders = Arrays.copyOf(c.categoriesOrders, capacity);
+            c.scoresHt = Arrays.copyOf(c.scoresHt, capacity);
+            c.scoresFt = Arrays.copyOf(c.scoresFt, capacity);
+            c.urls = Arrays.copyOf(c.urls, capacity);
+            c.goalOffsets = Arrays.copyOf(c.goalOffsets, capacity + 1);
+        }
+        if (goals > c.goalTypes.length) {
+            int capacity = Math.max(goals, c.goalTypes.length * 2);
+            c.goalTypes = Arrays.copyOf(c.goalTypes, capacity);
+            c.goalMinutes = Arrays.copyOf(c.goalMinutes, capacity);
+            c.goalScoresBefore = Arrays.copyOf(c.goalScoresBefore, capacity);
+            c.goalTeams = Arrays.copyOf(c.goalTeams, capacity);
+            c.goalPlayers = Arrays.copyOf(c.goalPlayers, capacity);
+        }
+        columns = c;
+        return c;
+    }
+}
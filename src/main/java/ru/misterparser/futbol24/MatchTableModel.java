@@ -4,10 +4,10 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.swing.table.DefaultTableModel;
 import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,7 +19,21 @@ public class MatchTableModel extends DefaultTableModel {
 
     static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
-    private List<Match> items = new CopyOnWriteArrayList<>();
+    static final int DATE_COLUMN = 0;
+    static final int LEAGUE_COLUMN = 1;
+    static final int HOME_TEAM_COLUMN = 2;
+    static final int GUEST_TEAM_COLUMN = 3;
+    static final int GOALS_COLUMN = 4;
+    static final int SCORE_HT_COLUMN = 5;
+    static final int SCORE_FT_COLUMN = 6;
+    static final int URL_COLUMN = 7;
+
+    // при очистке заменяются целиком: представления старых матчей остаются рабочими.
+    // Чтение строк без блокировки модели, его ведёт и фильтрация в фоне (MatchRowSorter)
+    private volatile MatchStore items = new MatchStore();
+    private volatile MatchSearchIndex searchIndex = new MatchSearchIndex();
+    // найденные матчи, ещё не перенесённые в таблицу потоком Swing
+    private final Queue<MatchStore.Row> pending = new ConcurrentLinkedQueue<>();
 
     MatchTableModel() {
     }
@@ -45,26 +59,42 @@ public class MatchTableModel extends DefaultTableModel {
     }
 
     @Override
-    synchronized public Object getValueAt(int rowIndex, int columnIndex) {
-        Match match = items.get(rowIndex);
-        String[] strings = getStrings(match);
-        return columnIndex < strings.length ? strings[columnIndex] : "";
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return getString(items.get(rowIndex), columnIndex);
     }
 
-    synchronized private String[] getStrings(Match match) {
-        return new String[]{
-                match.getDate().format(DATE_TIME_FORMATTER),
-                StringUtils.join(match.getCategories(), " » "),
-                match.getHomeTeam(),
-                match.getGuestTeam(),
-                match.getGoals().stream().map(this::formatGoal).collect(Collectors.joining(", ")),
-                String.valueOf(match.getScoreHt()),
-                String.valueOf(match.getScoreFt()),
-                match.getUrl()};
+    private String getString(Match match, int columnIndex) {
+        switch (columnIndex) {
+            case DATE_COLUMN:
+                return match.getDate().format(DATE_TIME_FORMATTER);
+            case LEAGUE_COLUMN:
+                return StringUtils.join(match.getCategories(), " » ");
+            case HOME_TEAM_COLUMN:
+                return match.getHomeTeam();
+            case GUEST_TEAM_COLUMN:
+                return match.getGuestTeam();
+            case GOALS_COLUMN:
+                return formatGoals(match);
+            case SCORE_HT_COLUMN:
+                return String.valueOf(match.getScoreHt());
+            case SCORE_FT_COLUMN:
+                return String.valueOf(match.getScoreFt());
+            case URL_COLUMN:
+                return match.getUrl();
+            default:
+                return "";
+        }
     }
 
-    private String formatGoal(Match.Goal goal) {
-        return goal.getMinute() + " " + goal.getScoreBefore();
+    private String formatGoals(Match match) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < match.getGoalCount(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(match.getGoalMinute(i)).append(" ").append(MatchStore.unpackScore(match.getGoalScoreBefore(i)));
+        }
+        return sb.toString();
     }
 
     synchronized private String[] getHeaders() {
@@ -76,21 +106,69 @@ public class MatchTableModel extends DefaultTableModel {
         fireTableStructureChanged();
     }
 
-    synchronized Match getMatch(Integer row) {
+    Match getMatch(Integer row) {
         return items.get(row);
     }
 
     synchronized void clear() {
-        items.clear();
+        pending.clear();
+        items = new MatchStore();
+        searchIndex = new MatchSearchIndex();
         fireTableDataChanged();
     }
 
-    synchronized void addItem(Match match) {
-        items.add(match);
-        fireTableRowsInserted(items.size() - 1, items.size() - 1);
+    /**
+     * Вызывается потоками загрузки без блокировок: матч попадёт в таблицу при следующем вызове drain.
+     */
+    void offer(MatchStore.Row row) {
+        pending.add(row);
+    }
+
+    /**
+     * Переносит накопленные матчи в таблицу одним событием вставки. Вызывается в потоке Swing.
+     *
+     * @return число добавленных строк
+     */
+    synchronized int drain() {
+        int first = items.size();
+        MatchStore.Row row;
+        while ((row = pending.poll()) != null) {
+            Match added = items.add(row);
+            String[] strings = new String[URL_COLUMN + 1];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = getString(added, i);
+            }
+            searchIndex.add(strings);
+        }
+        int last = items.size() - 1;
+        if (last >= first) {
+            fireTableRowsInserted(first, last);
+        }
+        return last - first + 1;
+    }
+
+    /**
+     * Строка содержит текст поиска хотя бы в одном столбце, без учёта регистра.
+     */
+    boolean isSearchMatch(int row, String text) {
+        return searchIndex.matches(row, text);
+    }
+
+    /**
+     * Строки, содержащие текст поиска, среди первых getSearchRowCount() строк или больше.
+     */
+    BitSet findSearchMatches(String text) {
+        return searchIndex.find(text);
+    }
+
+    /**
+     * Число строк, уже доступных поиску: строка попадает в индекс после добавления в таблицу.
+     */
+    int getSearchRowCount() {
+        return searchIndex.size();
     }
 
     synchronized List<Match> getMatches() {
-        return Collections.unmodifiableList(items);
+        return items.asList();
     }
 }
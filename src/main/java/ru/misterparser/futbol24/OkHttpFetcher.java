@@ -0,0 +1,201 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная загрузка страниц через OkHttp.
+ * <p>
+ * Все клиенты строятся от одного базового и делят с ним пул соединений и диспетчер,
+ * поэтому число одновременных запросов ограничивает ConcurrencyLimiter, а не число потоков.
+ * Сжатие gzip OkHttp включает и распаковывает сам.
+ */
+@Slf4j
+class OkHttpFetcher {
+
+    private static final OkHttpFetcher OK_HTTP_FETCHER = new OkHttpFetcher();
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/69.0.3497.100 Safari/537.36";
+
+    private final ProxyPool proxyPool = ProxyPool.get();
+    private final ConcurrencyLimiter concurrencyLimiter = ConcurrencyLimiter.get();
+    private final OkHttpClient baseClient;
+    private final Map<ProxyPool.Entry, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "OkHttpFetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private OkHttpFetcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(concurrencyLimiter.getMaxLimit());
+        dispatcher.setMaxRequestsPerHost(concurrencyLimiter.getMaxLimit());
+        baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(concurrencyLimiter.getMaxLimit(), 5, TimeUnit.MINUTES))
+                .connectTimeout(Configuration.NETWORK_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(Configuration.NETWORK_TIMEOUT, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
+        proxyPool.addQuarantineListener(clients::remove);
+    }
+
+    static OkHttpFetcher get() {
+        return OK_HTTP_FETCHER;
+    }
+
+    CompletableFuture<String> fetch(String url, Map<String, String> headers, boolean isCache) {
+        if (isCache) {
+            String page = PageCache.get().get(url, headers, CachePolicy.getMaxAge(url));
+            if (page != null) {
+                return CompletableFuture.completedFuture(page);
+            }
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        attempt(url, headers, isCache, result);
+        return result;
+    }
+
+    private void attempt(String url, Map<String, String> headers, boolean isCache, CompletableFuture<String> result) {
+        concurrencyLimiter.acquireAsync().whenComplete((ignored, throwable) -> send(url, headers, isCache, result));
+    }
+
+    /**
+     * Вызывается с занятым разрешением ConcurrencyLimiter в потоке диспетчера OkHttp или того, кто освободил
+     * разрешение, поэтому не ждёт: если все прокси в карантине, повторяется по таймеру.
+     */
+    private void send(String url, Map<String, String> headers, boolean isCache, CompletableFuture<String> result) {
+        if (result.isDone()) {
+            concurrencyLimiter.release(ConcurrencyLimiter.Outcome.ERROR, 0);
+            return;
+        }
+        ProxyPool.Entry proxy;
+        Call call;
+        try {
+            proxy = proxyPool.tryAcquire();
+            if (proxy == null) {
+                scheduler.schedule(() -> send(url, headers, isCache, result), proxyPool.getWaitTime(), TimeUnit.MILLISECONDS);
+                return;
+            }
+            call = getClient(proxy).newCall(buildRequest(url, headers));
+        } catch (Throwable t) {
+            concurrencyLimiter.release(ConcurrencyLimiter.Outcome.ERROR, 0);
+            result.completeExceptionally(t);
+            return;
+        }
+        result.whenComplete((page, t) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        long start = System.currentTimeMillis();
+        log.debug("Обработка страницы: " + url + " через " + proxy);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                concurrencyLimiter.release(ConcurrencyLimiter.Outcome.ERROR, System.currentTimeMillis() - start);
+                retry(proxy);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                String page;
+                try (ResponseBody body = response.body()) {
+                    page = body != null ? body.string() : "";
+                } catch (Exception e) {
+                    onFailure(call, e instanceof IOException ? (IOException) e : new IOException(e));
+                    return;
+                }
+                long latency = System.currentTimeMillis() - start;
+                if (Loader.isCaptcha(page)) {
+                    concurrencyLimiter.release(ConcurrencyLimiter.Outcome.CAPTCHA, latency);
+                    log.debug("IP заблокирован");
+                    retry(proxy);
+                    return;
+                }
+                if (!response.isSuccessful()) {
+                    concurrencyLimiter.release(ConcurrencyLimiter.Outcome.ERROR, latency);
+                    log.debug("Код ответа " + response.code() + ": " + url);
+                    retry(proxy);
+                    return;
+                }
+                concurrencyLimiter.release(ConcurrencyLimiter.Outcome.SUCCESS, latency);
+                proxyPool.success(proxy, latency);
+                if (isCache && CachePolicy.isStorable(url, page)) {
+                    PageCache.get().put(url, headers, page);
+                }
+                result.complete(page);
+            }
+
+            private void retry(ProxyPool.Entry proxy) {
+                if (result.isDone()) {
+                    // запрос отменён, прокси тут ни при чём
+                    return;
+                }
+                proxyPool.failure(proxy);
+                log.debug("Следующий прокси...");
+                attempt(url, headers, isCache, result);
+            }
+        });
+    }
+
+    private OkHttpClient getClient(ProxyPool.Entry proxy) {
+        return clients.computeIfAbsent(proxy, p -> baseClient.newBuilder()
+                .proxy(p.getProxy())
+                .cookieJar(new MemoryCookieJar())
+                .build());
+    }
+
+    private Request buildRequest(String url, Map<String, String> headers) {
+        Request.Builder builder = new Request.Builder().url(url).header("User-Agent", USER_AGENT);
+        if (headers != null) {
+            headers.forEach(builder::header);
+        }
+        return builder.build();
+    }
+
+    private static class MemoryCookieJar implements CookieJar {
+
+        private final Map<String, Cookie> cookies = new ConcurrentHashMap<>();
+
+        @Override
+        public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            for (Cookie cookie : cookies) {
+                this.cookies.put(cookie.domain() + cookie.path() + cookie.name(), cookie);
+            }
+        }
+
+        @Override
+        public List<Cookie> loadForRequest(HttpUrl url) {
+            List<Cookie> result = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Cookie cookie : cookies.values()) {
+                if (cookie.expiresAt() > now && cookie.matches(url)) {
+                    result.add(cookie);
+                }
+            }
+            return result;
+        }
+    }
+}
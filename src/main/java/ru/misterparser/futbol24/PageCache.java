@@ -0,0 +1,59 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+
+/**
+ * Кеш загруженных страниц. Реализация выбирается параметром cacheBackend в parser.properties:
+ * segments (по умолчанию) - журнал сжатых сегментов, files - файл на каждую страницу в каталоге cache/.
+ */
+interface PageCache {
+
+    boolean contains(String url, Map<String, String> headers);
+
+    default String get(String url, Map<String, String> headers) {
+        return get(url, headers, Long.MAX_VALUE);
+    }
+
+    /**
+     * Страница из кеша, если она сохранена не раньше maxAge миллисекунд назад, иначе null.
+     */
+    String get(String url, Map<String, String> headers, long maxAge);
+
+    void put(String url, Map<String, String> headers, String page);
+
+    boolean remove(String url, Map<String, String> headers);
+
+    /**
+     * Освобождает место, занятое удалёнными и перезаписанными страницами.
+     */
+    default void compact() {
+    }
+
+    static PageCache get() {
+        return Holder.PAGE_CACHE;
+    }
+
+    @Slf4j
+    final class Holder {
+
+        private static final PageCache PAGE_CACHE = create();
+
+        private Holder() {
+        }
+
+        private static PageCache create() {
+            String backend = ParserProperties.get().getString("cacheBackend", "segments");
+            if ("files".equalsIgnoreCase(backend)) {
+                return FilePageCache.get();
+            }
+            try {
+                return new SegmentPageCache();
+            } catch (Exception e) {
+                log.debug("Не удалось открыть кеш страниц в сегментах, используется каталог cache/", e);
+                return FilePageCache.get();
+            }
+        }
+    }
+}
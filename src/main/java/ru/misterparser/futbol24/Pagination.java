@@ -0,0 +1,73 @@
+package ru.misterparser.futbol24;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Спекулятивная пагинация страниц результатов раздела.
+ * <p>
+ * Номер страницы стоит в ссылке параметром statLR-Page, поэтому ссылки на следующие страницы известны заранее
+ * и их можно запрашивать окном в несколько страниц, не дожидаясь разбора предыдущей. Страницы при этом
+ * принимаются строго по порядку: страница N обрабатывается, только когда страница N-1 подтвердила,
+ * что N существует. Запросы за последней страницей отменяются.
+ */
+class Pagination {
+
+    private static final Pattern PAGE_PATTERN = Pattern.compile("statLR-Page=([0-9]+)");
+
+    private final String template;
+    private final Map<Integer, CompletableFuture<String>> requests = new ConcurrentHashMap<>();
+    private volatile int last = Integer.MAX_VALUE;
+
+    private Pagination(String template) {
+        this.template = template;
+    }
+
+    /**
+     * По ссылке с первой страницы на вторую, null - ссылка не похожа на statLR-Page=1 и страницы придётся идти по одной.
+     */
+    static Pagination of(String secondPage) {
+        Matcher matcher = PAGE_PATTERN.matcher(secondPage);
+        if (matcher.find() && matcher.group(1).equals("1")) {
+            return new Pagination(secondPage);
+        }
+        return null;
+    }
+
+    String getUrl(int index) {
+        return PAGE_PATTERN.matcher(template).replaceFirst("statLR-Page=" + index);
+    }
+
+    /**
+     * Новый запрос страницы или null, если страница уже запрошена или лежит за последней.
+     * Страницы принимаются по одной, поэтому запросы не создаются параллельно.
+     */
+    CompletableFuture<String> request(int index, Function<String, CompletableFuture<String>> fetcher) {
+        if (index > last || requests.containsKey(index)) {
+            return null;
+        }
+        CompletableFuture<String> request = fetcher.apply(getUrl(index));
+        requests.put(index, request);
+        return request;
+    }
+
+    CompletableFuture<String> getRequest(int index) {
+        return requests.get(index);
+    }
+
+    /**
+     * Страница index последняя: запросы дальше неё отменяются.
+     */
+    void finish(int index) {
+        last = index;
+        requests.forEach((i, request) -> {
+            if (i > index) {
+                request.cancel(true);
+            }
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Настройки из parser.properties рядом с программой.
+ */
+@Slf4j
+class ParserProperties {
+
+    private static volatile ParserProperties parserProperties;
+
+    private final Properties properties = new Properties();
+
+    private ParserProperties() {
+        try (InputStream inputStream = new FileInputStream(ConfigurationUtils.getCurrentDirectory() + "parser.properties")) {
+            properties.load(inputStream);
+        } catch (FileNotFoundException ignored) {
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    static ParserProperties get() {
+        if (parserProperties == null) {
+            synchronized (ParserProperties.class) {
+                if (parserProperties == null) {
+                    parserProperties = new ParserProperties();
+                }
+            }
+        }
+        return parserProperties;
+    }
+
+    String getString(String name, String defaultValue) {
+        return properties.getProperty(name, defaultValue).trim();
+    }
+
+    boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(name, String.valueOf(defaultValue)));
+    }
+
+    int getInt(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            log.debug("Неверное значение " + name + " в parser.properties, используется " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package ru.misterparser.futbol24;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.misterparser.common.proxy.ProxyInfo;
+import ru.misterparser.common.proxy.ProxyUtils;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Пул прокси с оценкой качества каждого прокси.
+ * <p>
+ * Выбор прокси не берёт блокировок: массив записей публикуется один раз через volatile,
+ * прокси выбирается из двух случайных кандидатов по доле успешных запросов и задержке.
+ * Прокси после ошибки не удаляется, а уходит в карантин с экспоненциально растущим сроком.
+ */
+@Slf4j
+class ProxyPool {
+
+    private static final ProxyPool PROXY_POOL = new ProxyPool();
+
+    private static final double ALPHA = 0.3;
+    private static final double INITIAL_LATENCY = 2000;
+    private static final long QUARANTINE_BASE = 30_000;
+    private static final long QUARANTINE_MAX = 30 * 60_000;
+    private static final int RANDOM_PROBES = 8;
+    private static final long MIN_WAIT = 100;
+    private static final long MAX_WAIT = 5000;
+
+    private volatile Entry[] entries = new Entry[0];
+    private final List<Consumer<Entry>> quarantineListeners = new CopyOnWriteArrayList<>();
+
+    private ProxyPool() {
+    }
+
+    static ProxyPool get() {
+        return PROXY_POOL;
+    }
+
+    Entry acquire() throws InterruptedException {
+        while (true) {
+            Entry entry = tryAcquire();
+            if (entry != null) {
+                return entry;
+            }
+            long wait = getWaitTime();
+            log.debug((entries.length > 0 ? "Все прокси в карантине" : "Нет прокси") + ", ожидание " + wait + " мс");
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Прокси без ожидания или null, если все в карантине или список пуст: тогда повторить через getWaitTime().
+     */
+    Entry tryAcquire() throws InterruptedException {
+        Entry[] entries = load();
+        if (entries.length == 0) {
+            return null;
+        }
+        return choose(entries, System.currentTimeMillis());
+    }
+
+    /**
+     * Сколько ждать до выхода из карантина ближайшего прокси.
+     */
+    long getWaitTime() {
+        Entry[] entries = this.entries;
+        if (entries.length == 0) {
+            return MAX_WAIT;
+        }
+        return Math.min(Math.max(earliestRelease(entries) - System.currentTimeMillis(), MIN_WAIT), MAX_WAIT);
+    }
+
+    void success(Entry entry, long latency) {
+        entry.success(latency);
+    }
+
+    void failure(Entry entry) {
+        long quarantine = entry.failure();
+        log.debug("Прокси " + entry + " в карантине на " + quarantine / 1000 + " с");
+        for (Consumer<Entry> listener : quarantineListeners) {
+            listener.accept(entry);
+        }
+    }
+
+    void addQuarantineListener(Consumer<Entry> listener) {
+        quarantineListeners.add(listener);
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    int available() {
+        long now = System.currentTimeMillis();
+        int c = 0;
+        for (Entry entry : entries) {
+            if (entry.isAvailable(now)) {
+                c++;
+            }
+        }
+        return c;
+    }
+
+    private Entry[] load() {
+        Entry[] entries = this.entries;
+        if (entries.length > 0) {
+            return entries;
+        }
+        synchronized (this) {
+            if (this.entries.length == 0) {
+                List<ProxyInfo> proxyInfos = new ArrayList<>();
+                ProxyUtils.loadFromFile(proxyInfos, new ArrayList<>(), true, false);
+                if (proxyInfos.isEmpty()) {
+                    return this.entries;
+                }
+                List<Entry> loaded = new ArrayList<>(proxyInfos.size());
+                for (ProxyInfo proxyInfo : proxyInfos) {
+                    loaded.add(new Entry(proxyInfo));
+                }
+                log.debug("Загружено прокси: " + loaded.size());
+                // до конца проверки прокси выдаются непроверенными, проверка не держит блокировку
+                this.entries = loaded.toArray(new Entry[0]);
+                if (ParserProperties.get().getBoolean("proxyCheck", true)) {
+                    startValidation(loaded);
+                }
+            }
+            return this.entries;
+        }
+    }
+
+    private void startValidation(List<Entry> loaded) {
+        Thread thread = new Thread(() -> {
+            try {
+                List<Entry> validated = validate(loaded);
+                this.entries = validated.toArray(new Entry[0]);
+            } catch (InterruptedException e) {
+                log.debug("Проверка прокси прервана, используется весь список");
+            } catch (Exception e) {
+                log.debug("Exception", e);
+            }
+        }, "ProxyValidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Мёртвые прокси отбрасываются, у живых начальная задержка - замеренная при проверке.
+     */
+    private List<Entry> validate(List<Entry> loaded) throws InterruptedException {
+        // проверка говорит по протоколу SOCKS, HTTP-прокси остаются в списке без проверки
+        List<Entry> socks = new ArrayList<>();
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : loaded) {
+            (entry.getProxy().type() == Proxy.Type.SOCKS ? socks : result).add(entry);
+        }
+        if (socks.isEmpty()) {
+            return loaded;
+        }
+        Map<Entry, ProxyValidator.Measurement> alive = ProxyValidator.fromProperties().validate(socks, entry -> (InetSocketAddress) entry.getProxy().address(),
+                entry -> entry.getProxyInfo().getType() == ProxyInfo.Type.SOCKS4 ? ProxyValidator.Protocol.SOCKS4 : ProxyValidator.Protocol.SOCKS5);
+        if (alive.isEmpty()) {
+            // скорее всего, недоступна сама сеть: проверка ничего не даёт, работаем со всем списком
+            log.debug("Ни один прокси не прошёл проверку, используется весь список");
+            return loaded;
+        }
+        alive.forEach((entry, measurement) -> entry.latency = Math.max(measurement.getFirstByteLatency(), 1));
+        result.addAll(alive.keySet());
+        return result;
+    }
+
+    private Entry choose(Entry[] entries, long now) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Entry best = null;
+        int candidates = 0;
+        for (int i = 0; i < RANDOM_PROBES && candidates < 2; i++) {
+            Entry entry = entries[random.nextInt(entries.length)];
+            if (entry.isAvailable(now)) {
+                candidates++;
+                if (best == null || entry.score() > best.score()) {
+                    best = entry;
+                }
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // случайные пробы не нашли свободного прокси, проходим весь список с произвольного места
+        int start = random.nextInt(entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[(start + i) % entries.length];
+            if (entry.isAvailable(now)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private long earliestRelease(Entry[] entries) {
+        long earliest = Long.MAX_VALUE;
+        for (Entry entry : entries) {
+            earliest = Math.min(earliest, entry.quarantinedUntil);
+        }
+        return earliest;
+    }
+
+    static class Entry {
+
+        @Getter
+        private final ProxyInfo proxyInfo;
+
+        private volatile double successRate = 1.0;
+        private volatile double latency = INITIAL_LATENCY;
+        private volatile long quarantinedUntil;
+        private volatile Proxy proxy;
+        private int failures;
+
+        private Entry(ProxyInfo proxyInfo) {
+            this.proxyInfo = proxyInfo;
+        }
+
+        boolean isAvailable(long now) {
+            return quarantinedUntil <= now;
+        }
+
+        double score() {
+            return successRate / latency;
+        }
+
+        double getLatency() {
+            return latency;
+        }
+
+        /**
+         * Адрес прокси для клиентов, которым нужен java.net.Proxy, а не ProxyInfo (OkHttp, проверка SOCKS).
+         */
+        Proxy getProxy() {
+            Proxy proxy = this.proxy;
+            if (proxy == null) {
+                this.proxy = proxy = createProxy(proxyInfo);
+            }
+            return proxy;
+        }
+
+        /**
+         * SOCKS4 не передаёт имена хостов, поэтому адрес такого прокси разрешается сразу, один раз на запись.
+         */
+        private static Proxy createProxy(ProxyInfo proxyInfo) {
+            switch (proxyInfo.getType()) {
+                case HTTP:
+                    return new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxyInfo.getHost(), proxyInfo.getPort()));
+                case SOCKS4:
+                    return new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(proxyInfo.getHost(), proxyInfo.getPort()));
+                default:
+                    return new Proxy(Proxy.Type.SOCKS, InetSocketAddress.createUnresolved(proxyInfo.getHost(), proxyInfo.getPort()));
+            }
+        }
+
+        private synchronized void success(long latency) {
+            failures = 0;
+            successRate = successRate * (1 - ALPHA) + ALPHA;
+            this.latency = this.latency * (1 - ALPHA) + Math.max(latency, 1) * ALPHA;
+        }
+
+        private synchronized long failure() {
+            failures++;
+            successRate = successRate * (1 - ALPHA);
+            long quarantine = Math.min(QUARANTINE_BASE << Math.min(failures - 1, 16), QUARANTINE_MAX);
+            quarantinedUntil = System.currentTimeMillis() + quarantine;
+            return quarantine;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(proxyInfo);
+        }
+    }
+}
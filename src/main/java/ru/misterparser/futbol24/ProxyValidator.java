@@ -0,0 +1,188 @@
+package ru.misterparser.futbol24;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Проверка прокси перед обходом.
+ * <p>
+ * С каждым прокси выполняется рукопожатие его версии SOCKS с запросом CONNECT к сайту: для SOCKS5 - с именем сайта,
+ * для SOCKS4 - с его IPv4-адресом, потому что SOCKS4 имён не передаёт. Замеряются время соединения и время до первого байта ответа прокси. Неответившие прокси отбрасываются,
+ * остальные упорядочиваются по задержке. Проверки идут параллельно на небольшом пуле потоков,
+ * поэтому весь список проверяется примерно за один таймаут, а не за таймаут на каждый мёртвый прокси.
+ */
+@Slf4j
+class ProxyValidator {
+
+    private final String targetHost;
+    private final int targetPort;
+    private final int timeout;
+    private final int threads;
+    private volatile byte[] targetAddress;
+
+    enum Protocol {
+        SOCKS4,
+        SOCKS5
+    }
+
+    @Value
+    static class Measurement {
+        long connectLatency;
+        long firstByteLatency;
+    }
+
+    ProxyValidator(String targetHost, int targetPort, int timeout, int threads) {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.timeout = timeout;
+        this.threads = threads;
+    }
+
+    static ProxyValidator fromProperties() {
+        ParserProperties properties = ParserProperties.get();
+        return new ProxyValidator("www.futbol24.com", 443,
+                properties.getInt("proxyCheckTimeout", 5000),
+                Math.max(1, properties.getInt("proxyCheckThreads", 32)));
+    }
+
+    /**
+     * Живые прокси в порядке возрастания задержки до первого байта.
+     */
+    <T> Map<T, Measurement> validate(List<T> proxies, Function<T, InetSocketAddress> address, Function<T, Protocol> protocol) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(proxies.size(), 1)), r -> {
+            Thread thread = new Thread(r, "ProxyValidator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<Measurement>> futures = new ArrayList<>(proxies.size());
+            for (T proxy : proxies) {
+                futures.add(executor.submit(() -> check(address.apply(proxy), protocol.apply(proxy))));
+            }
+            List<Map.Entry<T, Measurement>> alive = new ArrayList<>();
+            for (int i = 0; i < proxies.size(); i++) {
+                try {
+                    Measurement measurement = futures.get(i).get();
+                    if (measurement != null) {
+                        alive.add(Map.entry(proxies.get(i), measurement));
+                    }
+                } catch (ExecutionException e) {
+                    log.debug("Прокси " + proxies.get(i) + " не проверен: " + e.getCause());
+                }
+            }
+            alive.sort(Comparator.comparingLong(e -> e.getValue().getFirstByteLatency()));
+            Map<T, Measurement> result = new LinkedHashMap<>();
+            for (Map.Entry<T, Measurement> e : alive) {
+                result.put(e.getKey(), e.getValue());
+            }
+            log.debug("Проверено прокси: " + proxies.size() + ", живых " + result.size() + ", за " + (System.currentTimeMillis() - start) + " мс");
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * null, если прокси не ответил или отказал в соединении с сайтом.
+     */
+    Measurement check(InetSocketAddress proxy, Protocol protocol) {
+        try {
+            return handshake(proxy, protocol);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Measurement handshake(InetSocketAddress proxy, Protocol protocol) throws IOException {
+        byte[] request = protocol == Protocol.SOCKS4 ? getSocks4Request() : null;
+        long start = System.currentTimeMillis();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(proxy.getHostString(), proxy.getPort()), timeout);
+            socket.setSoTimeout(timeout);
+            long connectLatency = System.currentTimeMillis() - start;
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            long firstByteLatency;
+            if (protocol == Protocol.SOCKS5) {
+                out.write(new byte[]{5, 1, 0});
+                out.flush();
+                int version = in.read();
+                firstByteLatency = System.currentTimeMillis() - start;
+                if (version != 5 || in.read() != 0) {
+                    return null;
+                }
+                byte[] host = targetHost.getBytes(StandardCharsets.US_ASCII);
+                request = new byte[7 + host.length];
+                request[0] = 5;
+                request[1] = 1;
+                request[3] = 3;
+                request[4] = (byte) host.length;
+                System.arraycopy(host, 0, request, 5, host.length);
+                request[5 + host.length] = (byte) (targetPort >> 8);
+                request[6 + host.length] = (byte) targetPort;
+                out.write(request);
+                out.flush();
+                if (in.read() != 5 || in.read() != 0) {
+                    return null;
+                }
+            } else {
+                out.write(request);
+                out.flush();
+                int version = in.read();
+                firstByteLatency = System.currentTimeMillis() - start;
+                if (version != 0 || in.read() != 0x5A) {
+                    return null;
+                }
+            }
+            return new Measurement(connectLatency, firstByteLatency);
+        }
+    }
+
+    /**
+     * CONNECT SOCKS4: версия, команда, порт, IPv4-адрес сайта, пустой идентификатор пользователя.
+     */
+    private byte[] getSocks4Request() throws UnknownHostException {
+        byte[] address = targetAddress;
+        if (address == null) {
+            for (InetAddress inetAddress : InetAddress.getAllByName(targetHost)) {
+                if (inetAddress instanceof Inet4Address) {
+                    address = inetAddress.getAddress();
+                    break;
+                }
+            }
+            if (address == null) {
+                throw new UnknownHostException("Нет IPv4-адреса для " + targetHost);
+            }
+            targetAddress = address;
+        }
+        byte[] request = new byte[9];
+        request[0] = 4;
+        request[1] = 1;
+        request[2] = (byte) (targetPort >> 8);
+        request[3] = (byte) targetPort;
+        System.arraycopy(address, 0, request, 4, 4);
+        return request;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import ru.misterparser.common.Utils;
+import ru.misterparser.common.configuration.ConfigurationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Кеш страниц поверх SegmentStore: страницы сжимаются deflate и дописываются в общие сегменты
+ * каталога page-cache/ вместо отдельного файла на каждую ссылку.
+ * <p>
+ * Страницы из каталога cache/ переносятся в фоне. Пока перенос не закончен, страницы, которых ещё нет
+ * в сегментах, берутся из cache/.
+ */
+@Slf4j
+class SegmentPageCache implements PageCache {
+
+    private static final String IMPORTED_MARKER = "imported";
+
+    private final SegmentStore store;
+    // удалённые во время переноса: перенос не должен вернуть их из cache/
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    private volatile boolean imported;
+
+    SegmentPageCache() throws IOException {
+        File directory = new File(ConfigurationUtils.getCurrentDirectory() + "page-cache/");
+        store = new SegmentStore(directory);
+        File marker = new File(directory, IMPORTED_MARKER);
+        imported = marker.exists();
+        if (!imported) {
+            Thread thread = new Thread(() -> importFiles(new File(FilePageCache.get().getDirectory()), marker), "PageCacheImport");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Однократный перенос страниц из каталога cache/, чтобы после смены хранилища не загружать их заново.
+     * Время записи берётся из даты изменения файла, сам каталог не трогается. Если перенос не удался,
+     * до перезапуска страницы по-прежнему берутся из cache/, а при следующем запуске перенос продолжится.
+     */
+    private void importFiles(File cacheDirectory, File marker) {
+        try {
+            if (cacheDirectory.isDirectory()) {
+                Collection<File> files = FileUtils.listFiles(cacheDirectory, null, true);
+                log.debug("Перенос страниц из " + cacheDirectory + ": " + files.size());
+                int count = 0;
+                for (File file : files) {
+                    String key = cacheDirectory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+                    byte[] value;
+                    try {
+                        value = deflate(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        log.debug("Не удалось перенести " + file, e);
+                        continue;
+                    }
+                    synchronized (this) {
+                        // страница, сохранённая или удалённая во время переноса, новее файла
+                        if (store.contains(key) || removed.contains(key)) {
+                            continue;
+                        }
+                        store.put(key, value, file.lastModified());
+                    }
+                    count++;
+                }
+                log.debug("Перенесено страниц: " + count);
+            }
+            Files.createFile(marker.toPath());
+            imported = true;
+            removed.clear();
+        } catch (Exception e) {
+            log.debug("Не удалось перенести страницы из " + cacheDirectory, e);
+        }
+    }
+
+    @Override
+    public boolean contains(String url, Map<String, String> headers) {
+        String key = getKey(url, headers);
+        return store.contains(key) || !imported && !removed.contains(key) && FilePageCache.get().contains(url, headers);
+    }
+
+    @Override
+    public String get(String url, Map<String, String> headers, long maxAge) {
+        try {
+            String key = getKey(url, headers);
+            SegmentStore.Entry entry = store.getEntry(key);
+            if (entry == null) {
+                return imported || removed.contains(key) ? null : FilePageCache.get().get(url, headers, maxAge);
+            }
+            if (System.currentTimeMillis() - entry.timestamp > maxAge) {
+                return null;
+            }
+            return inflate(entry.value);
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String url, Map<String, String> headers, String page) {
+        try {
+            String key = getKey(url, headers);
+            byte[] value = deflate(page);
+            if (imported) {
+                store.put(key, value);
+                return;
+            }
+            synchronized (this) {
+                store.put(key, value);
+            }
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    @Override
+    public boolean remove(String url, Map<String, String> headers) {
+        try {
+            String key = getKey(url, headers);
+            if (imported) {
+                return store.remove(key);
+            }
+            synchronized (this) {
+                boolean cached = contains(url, headers);
+                removed.add(key);
+                store.remove(key);
+                return cached;
+            }
+        } catch (Exception e) {
+            log.debug("Exception", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void compact() {
+        try {
+            store.compactIfNeeded();
+        } catch (Exception e) {
+            log.debug("Exception", e);
+        }
+    }
+
+    private static String getKey(String url, Map<String, String> headers) {
+        return Utils.getCacheKeyByUrl(url, headers);
+    }
+
+    private static byte[] deflate(String page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(page.length() / 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream outputStream = new DeflaterOutputStream(bytes, deflater)) {
+            outputStream.write(page.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String inflate(byte[] value) throws IOException {
+        try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(value))) {
+            return new String(IOUtils.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+}
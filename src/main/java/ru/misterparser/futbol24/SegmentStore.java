@@ -0,0 +1,370 @@
+package ru.misterparser.futbol24;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Хранилище "ключ → байты" в виде журнала сегментов с дозаписью.
+ * <p>
+ * Записи только дописываются в конец текущего сегмента, удаление - это запись-надгробие.
+ * Индекс ключей держится в памяти и восстанавливается чтением сегментов при открытии,
+ * поэтому чтение значения - одно позиционное чтение из файла.
+ * Сжатие перепишет живые записи в новые сегменты и удалит старые.
+ * <p>
+ * Формат записи: magic, длина ключа, длина значения (-1 для надгробия), время записи, crc, ключ, значение.
+ */
+@Slf4j
+class SegmentStore {
+
+    private static final int MAGIC = 0x46323453;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4;
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+    private final Set<Integer> segments = ConcurrentHashMap.newKeySet();
+
+    private int activeSegment;
+    private long activeSize;
+    private long liveBytes;
+    private long totalBytes;
+
+    private static class Location {
+        private final int segment;
+        private final long offset;
+        private final int keyLength;
+        private final int valueLength;
+        private final long timestamp;
+
+        private Location(int segment, long offset, int keyLength, int valueLength, long timestamp) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.timestamp = timestamp;
+        }
+
+        private long valuePosition() {
+            return offset + HEADER_SIZE + keyLength;
+        }
+
+        private long recordSize() {
+            return HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        }
+    }
+
+    /**
+     * Значение вместе со временем записи.
+     */
+    static class Entry {
+        final byte[] value;
+        final long timestamp;
+
+        private Entry(byte[] value, long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+
+    SegmentStore(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + directory);
+        }
+        open();
+    }
+
+    boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    Set<String> keys() {
+        return index.keySet();
+    }
+
+    byte[] get(String key) throws IOException {
+        Entry entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    Entry getEntry(String key) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            FileChannel channel = channels.get(location.segment);
+            if (channel == null) {
+                // сегмент удалён сжатием, индекс уже указывает на новое место
+                continue;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+                long position = location.valuePosition();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Сегмент " + location.segment + " обрезан");
+                    }
+                }
+                return new Entry(buffer.array(), location.timestamp);
+            } catch (ClosedChannelException e) {
+                log.debug("Сегмент закрыт во время чтения, повтор: " + key);
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(String key, byte[] value) throws IOException {
+        append(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Запись с заданным временем, используется при переносе данных из другого хранилища.
+     */
+    synchronized void put(String key, byte[] value, long timestamp) throws IOException {
+        append(key, value, timestamp);
+    }
+
+    /**
+     * Удаление атомарно: ключ исчезает из индекса только после записи надгробия.
+     */
+    synchronized boolean remove(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        append(key, null, System.currentTimeMillis());
+        return true;
+    }
+
+    synchronized void compactIfNeeded() throws IOException {
+        if (totalBytes > SEGMENT_SIZE && liveBytes * 2 < totalBytes) {
+            compact();
+        }
+    }
+
+    synchronized void compact() throws IOException {
+        List<Integer> old = new ArrayList<>(segments);
+        old.sort(Integer::compareTo);
+        log.debug("Сжатие " + directory + ": сегментов " + old.size() + ", живых данных " + liveBytes + " из " + totalBytes);
+        startSegment(activeSegment + 1);
+        totalBytes = 0;
+        liveBytes = 0;
+        for (Map.Entry<String, Location> e : new ArrayList<>(index.entrySet())) {
+            Location location = e.getValue();
+            if (location.segment >= activeSegment) {
+                continue;
+            }
+            byte[] value = get(e.getKey());
+            if (value != null) {
+                append(e.getKey(), value, location.timestamp);
+            }
+        }
+        // старые сегменты удаляются только после того, как перенесённые записи на диске
+        channels.get(activeSegment).force(false);
+        for (int segment : old) {
+            FileChannel channel = channels.remove(segment);
+            segments.remove(segment);
+            if (channel != null) {
+                channel.close();
+            }
+            File file = segmentFile(segment);
+            if (!file.delete()) {
+                log.debug("Не удалось удалить сегмент " + file);
+            }
+        }
+        log.debug("Сжатие завершено, ключей: " + index.size());
+    }
+
+    /**
+     * Удаляет все записи вместе с файлами сегментов.
+     */
+    synchronized void clear() throws IOException {
+        for (int segment : new ArrayList<>(segments)) {
+            FileChannel channel = channels.remove(segment);
+            segments.remove(segment);
+            if (channel != null) {
+                channel.close();
+            }
+            File file = segmentFile(segment);
+            if (!file.delete()) {
+                log.debug("Не удалось удалить сегмент " + file);
+            }
+        }
+        index.clear();
+        liveBytes = 0;
+        totalBytes = 0;
+        startSegment(1);
+    }
+
+    synchronized void close() {
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Exception", e);
+            }
+        }
+        channels.clear();
+    }
+
+    /**
+     * Проход по всем живым записям, используется для выгрузки содержимого целиком.
+     */
+    void forEach(BiConsumer<String, byte[]> consumer) throws IOException {
+        for (String key : index.keySet()) {
+            byte[] value = get(key);
+            if (value != null) {
+                consumer.accept(key, value);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        int[] ids = files == null ? new int[0] : Arrays.stream(files)
+                .map(f -> f.getName().substring(0, f.getName().length() - SEGMENT_SUFFIX.length()))
+                .filter(name -> name.matches("[0-9]+"))
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        for (int id : ids) {
+            FileChannel channel = FileChannel.open(segmentFile(id).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.put(id, channel);
+            segments.add(id);
+            long end = scan(id, channel);
+            if (end < channel.size()) {
+                log.debug("Сегмент " + id + " обрезан до " + end + " байт после неполной записи");
+                channel.truncate(end);
+            }
+            totalBytes += end;
+        }
+        if (ids.length == 0) {
+            startSegment(1);
+        } else {
+            activeSegment = ids[ids.length - 1];
+            activeSize = channels.get(activeSegment).size();
+        }
+        log.debug("Открыто хранилище " + directory + ": сегментов " + segments.size() + ", ключей " + index.size());
+        compactIfNeeded();
+    }
+
+    private long scan(int segment, FileChannel channel) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            long timestamp = header.getLong();
+            int crc = header.getInt();
+            long recordSize = HEADER_SIZE + keyLength + (long) Math.max(valueLength, 0);
+            if (keyLength < 0 || position + recordSize > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate((int) (recordSize - HEADER_SIZE));
+            channel.read(body, position + HEADER_SIZE);
+            if (crc(body.array()) != crc) {
+                break;
+            }
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+            Location previous;
+            if (valueLength < 0) {
+                previous = index.remove(key);
+            } else {
+                Location location = new Location(segment, position, keyLength, valueLength, timestamp);
+                previous = index.put(key, location);
+                liveBytes += location.recordSize();
+            }
+            if (previous != null) {
+                liveBytes -= previous.recordSize();
+            }
+            position += recordSize;
+        }
+        return position;
+    }
+
+    private void append(String key, byte[] value, long timestamp) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value != null ? value.length : -1;
+        int recordSize = HEADER_SIZE + keyBytes.length + Math.max(valueLength, 0);
+        if (activeSize + recordSize > SEGMENT_SIZE && activeSize > 0) {
+            startSegment(activeSegment + 1);
+        }
+        ByteBuffer body = ByteBuffer.allocate(recordSize - HEADER_SIZE);
+        body.put(keyBytes);
+        if (value != null) {
+            body.put(value);
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(MAGIC).putInt(keyBytes.length).putInt(valueLength).putLong(timestamp).putInt(crc(body.array()));
+        record.put(body.array());
+        record.flip();
+        FileChannel channel = channels.get(activeSegment);
+        long offset = activeSize;
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        activeSize += recordSize;
+        totalBytes += recordSize;
+        Location previous;
+        if (value != null) {
+            Location location = new Location(activeSegment, offset, keyBytes.length, valueLength, timestamp);
+            previous = index.put(key, location);
+            liveBytes += location.recordSize();
+        } else {
+            previous = index.remove(key);
+        }
+        if (previous != null) {
+            liveBytes -= previous.recordSize();
+        }
+    }
+
+    private void startSegment(int id) throws IOException {
+        FileChannel previous = channels.get(activeSegment);
+        if (previous != null) {
+            previous.force(false);
+        }
+        FileChannel channel = FileChannel.open(segmentFile(id).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.put(id, channel);
+        segments.add(id);
+        activeSegment = id;
+        activeSize = channel.size();
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%08d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+        return (int) crc32.getValue();
+    }
+}
@@ -0,0 +1,114 @@
+package ru.misterparser.futbol24;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Проверка рукопожатий на локальных заглушках SOCKS4 и SOCKS5.
+ */
+public class ProxyValidatorTest {
+
+    private static final int TARGET_PORT = 443;
+
+    @Test
+    public void socks4() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            byte[][] request = new byte[1][];
+            Thread thread = serve(server, (in, out) -> {
+                byte[] bytes = new byte[9];
+                new DataInputStream(in).readFully(bytes);
+                request[0] = bytes;
+                out.write(new byte[]{0, 0x5A, 0, 0, 0, 0, 0, 0});
+            });
+            ProxyValidator.Measurement measurement = createValidator().check(address(server), ProxyValidator.Protocol.SOCKS4);
+            thread.join();
+            assertNotNull(measurement);
+            assertArrayEquals(new byte[]{4, 1, 1, (byte) 0xBB, 127, 0, 0, 1, 0}, request[0]);
+        }
+    }
+
+    @Test
+    public void socks4Rejected() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread thread = serve(server, (in, out) -> {
+                new DataInputStream(in).readFully(new byte[9]);
+                out.write(new byte[]{0, 0x5B, 0, 0, 0, 0, 0, 0});
+            });
+            ProxyValidator.Measurement measurement = createValidator().check(address(server), ProxyValidator.Protocol.SOCKS4);
+            thread.join();
+            assertNull(measurement);
+        }
+    }
+
+    @Test
+    public void socks5() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            byte[][] request = new byte[1][];
+            Thread thread = serve(server, (in, out) -> {
+                DataInputStream data = new DataInputStream(in);
+                byte[] greeting = new byte[3];
+                data.readFully(greeting);
+                out.write(new byte[]{5, 0});
+                out.flush();
+                byte[] bytes = new byte[16];
+                data.readFully(bytes);
+                request[0] = bytes;
+                out.write(new byte[]{5, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+            });
+            ProxyValidator.Measurement measurement = createValidator().check(address(server), ProxyValidator.Protocol.SOCKS5);
+            thread.join();
+            assertNotNull(measurement);
+            byte[] expected = {5, 1, 0, 3, 9, '1', '2', '7', '.', '0', '.', '0', '.', '1', 1, (byte) 0xBB};
+            assertArrayEquals(expected, request[0]);
+        }
+    }
+
+    @Test
+    public void socks5Rejected() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread thread = serve(server, (in, out) -> {
+                new DataInputStream(in).readFully(new byte[3]);
+                out.write(new byte[]{5, (byte) 0xFF});
+            });
+            ProxyValidator.Measurement measurement = createValidator().check(address(server), ProxyValidator.Protocol.SOCKS5);
+            thread.join();
+            assertNull(measurement);
+        }
+    }
+
+    private static ProxyValidator createValidator() {
+        return new ProxyValidator("127.0.0.1", TARGET_PORT, 5000, 1);
+    }
+
+    private static InetSocketAddress address(ServerSocket server) {
+        return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+    }
+
+    private static Thread serve(ServerSocket server, Handler handler) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                handler.handle(socket.getInputStream(), socket.getOutputStream());
+                socket.getOutputStream().flush();
+            } catch (IOException ignored) {
+            }
+        }, "ProxyStub");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private interface Handler {
+        void handle(InputStream in, OutputStream out) throws IOException;
+    }
+}